@@ -0,0 +1,178 @@
+package edu.uob;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the command pipeline stage by stage against every config shipped in config/.
+ * <p>
+ * Run with {@code ./mvnw -P jmh test-compile exec:exec@jmh}, which enables the gc profiler, so every stage also
+ * reports its allocation rate per operation. Extra JMH options go in {@code -Djmh.args="..."}.
+ * Each stage is fed the custom command below: the first trigger phrase of the first custom action with all of
+ * its subjects. The first call may run that action, every later call is rejected the same way, so the world
+ * stays the same across iterations; the rejected benchmarks measure that path end to end.
+ * <p>
+ * The applied benchmarks run the whole pipeline up to applying an action. Two actions are added to the actions of
+ * the config: one consumes an item of the start location, the other produces it there again, and every call runs
+ * both, so the world is the same after each call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2)
+public class CommandPipelineBenchmark {
+
+    private static final String PLAYER = "bench";
+
+    @Param({"basic", "extended", "my", "zr"})
+    public String config;
+
+    private Controller controller;
+    private GameServer server;
+    private String look;
+    private String custom;
+    private String stash;
+    private String fetch;
+
+    // the custom command tokenized once, for the stages after tokenization
+    private int[] tokens;
+    private int count;
+    private IntMap<GameEntity> entities;
+    private List<Action> matched;
+
+    @Setup(Level.Trial)
+    public void setup() throws MyExceptions, IOException {
+        File entitiesFile = Paths.get("config" + File.separator + this.config + "-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = this.withReversibleActions(entitiesFile,
+                Paths.get("config" + File.separator + this.config + "-actions.xml").toAbsolutePath().toFile());
+        this.controller = new Controller(entitiesFile, actionsFile);
+        this.server = new GameServer(entitiesFile, actionsFile);
+
+        this.look = PLAYER + ": look";
+        Action action = this.controller.getActions().listCustomizedActions().get(0);
+        StringBuilder sb = new StringBuilder(PLAYER).append(":");
+        for (String word : action.getTriggerPhrases().get(0)) {
+            sb.append(" ").append(word);
+        }
+        for (String subject : action.getSubjects()) {
+            sb.append(" ").append(subject);
+        }
+        this.custom = sb.toString();
+
+        // create the player and settle the world before measuring
+        this.controller.handleCommand(this.look);
+        this.controller.handleCommand(this.custom);
+        this.server.handleCommand(this.look);
+        if (!"Stashed".equals(this.controller.handleCommand(this.stash)) || !"Fetched".equals(this.controller.handleCommand(this.fetch))) {
+            throw new IllegalStateException("the added actions are rejected");
+        }
+
+        CommandTokenizer tokenizer = this.controller.getTokenizer();
+        this.count = tokenizer.tokenize(this.custom, this.custom.indexOf(':') + 1);
+        this.tokens = tokenizer.tokens().clone();
+        this.entities = new IntMap<>();
+        for (int i = 0; i < this.count; i++) {
+            GameEntity entity = this.controller.getDocument().getEntity(this.tokens[i]);
+            if (entity != null) this.entities.put(this.tokens[i], entity);
+        }
+        IntMap<Action> possibleActions = new IntMap<>();
+        this.controller.getActions().matchActions(this.tokens, this.count, this.entities, possibleActions);
+        this.matched = possibleActions.values();
+    }
+
+    @Benchmark
+    public String controllerLook() throws MyExceptions {
+        return this.controller.handleCommand(this.look);
+    }
+
+    // the config's actions followed by a pair which stashes an item of the start location and fetches it back
+    private File withReversibleActions(File entitiesFile, File actionsFile) throws MyExceptions, IOException {
+        Location start = new Document(entitiesFile, new SymbolTable()).getLocation(0);
+        if (start.listItems().isEmpty()) throw new IllegalStateException("the start location has no item to stash");
+        String item = start.listItems().get(0).getName();
+        this.stash = new StringBuilder(PLAYER).append(": benchstash ").append(item).toString();
+        this.fetch = new StringBuilder(PLAYER).append(": benchfetch ").append(start.getName()).toString();
+        String pair = new StringBuilder()
+                .append("<action><triggers><keyphrase>benchstash</keyphrase></triggers>")
+                .append("<subjects><entity>").append(item).append("</entity></subjects>")
+                .append("<consumed><entity>").append(item).append("</entity></consumed><produced></produced>")
+                .append("<narration>Stashed</narration></action>")
+                .append("<action><triggers><keyphrase>benchfetch</keyphrase></triggers>")
+                .append("<subjects><entity>").append(start.getName()).append("</entity></subjects>")
+                .append("<consumed></consumed><produced><entity>").append(item).append("</entity></produced>")
+                .append("<narration>Fetched</narration></action>")
+                .append("</actions>").toString();
+        String actions = Files.readString(actionsFile.toPath());
+        int end = actions.lastIndexOf("</actions>");
+        Path file = Files.createTempFile("stag-bench", "-actions.xml");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, new StringBuilder(actions.substring(0, end)).append(pair).toString());
+        return file.toFile();
+    }
+
+    @Benchmark
+    public String controllerRejected() throws MyExceptions {
+        return this.controller.handleCommand(this.custom);
+    }
+
+    @Benchmark
+    public String controllerApplied() throws MyExceptions {
+        this.controller.handleCommand(this.stash);
+        return this.controller.handleCommand(this.fetch);
+    }
+
+    @Benchmark
+    public int tokenize() {
+        return this.controller.getTokenizer().tokenize(this.custom, this.custom.indexOf(':') + 1);
+    }
+
+    @Benchmark
+    public void documentLookups(Blackhole blackhole) {
+        Document document = this.controller.getDocument();
+        for (int i = 0; i < this.count; i++) {
+            blackhole.consume(document.getEntity(this.tokens[i]));
+        }
+        blackhole.consume(document.getPlayers().get(PLAYER));
+        blackhole.consume(document.getLocation(0));
+    }
+
+    @Benchmark
+    public CommandResult processActions() {
+        return this.controller.processActions(this.tokens, this.count, this.entities, new IntMap<>());
+    }
+
+    @Benchmark
+    public CommandResult checkActionSubjects() {
+        IntMap<Action> possibleActions = new IntMap<>(this.matched.size());
+        for (Action action : this.matched) {
+            possibleActions.put(action.getIdentifier(), action);
+        }
+        return this.controller.checkActionSubjects(possibleActions, this.entities);
+    }
+
+    @Benchmark
+    public String serverLook() {
+        return this.server.handleCommand(this.look);
+    }
+
+    @Benchmark
+    public String serverRejected() {
+        return this.server.handleCommand(this.custom);
+    }
+
+    @Benchmark
+    public String serverApplied() {
+        this.server.handleCommand(this.stash);
+        return this.server.handleCommand(this.fetch);
+    }
+}
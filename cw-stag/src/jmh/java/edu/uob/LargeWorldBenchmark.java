@@ -0,0 +1,79 @@
+package edu.uob;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads and plays worlds written by {@link WorldGenerator}, to see how loading and commands scale with the world.
+ * <p>
+ * Run only these with {@code ./mvnw -P jmh test-compile exec:exec@jmh -Djmh.args="LargeWorld -prof gc"}.
+ * Larger worlds are selected with {@code -p locations=100000}, which load in about a second.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LargeWorldBenchmark {
+
+    @Param({"1000", "10000"})
+    public int locations;
+
+    @Param({"1000"})
+    public int actions;
+
+    @Param({"0.1"})
+    public double overlap;
+
+    private File entitiesFile;
+    private File actionsFile;
+    private Controller controller;
+    private String[] commands;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, MyExceptions {
+        File directory = Files.createTempDirectory("stag-world").toFile();
+        File[] files = new WorldGenerator().seed(1).locations(this.locations).actions(this.actions)
+                .overlap(this.overlap).write(directory, "large");
+        this.entitiesFile = files[0];
+        this.actionsFile = files[1];
+        this.controller = new Controller(this.entitiesFile, this.actionsFile);
+
+        // a player walks around the ring of locations, looking and trying an action in every one
+        this.commands = new String[3 * this.locations];
+        for (int i = 0; i < this.commands.length / 3; i++) {
+            this.commands[3 * i] = "walker: look";
+            this.commands[3 * i + 1] = "walker: " + WorldGenerator.triggerWord(i % 200) + " " + WorldGenerator.furnitureName(i);
+            this.commands[3 * i + 2] = "walker: goto " + WorldGenerator.locationName((i + 1) % this.locations);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.entitiesFile.delete();
+        this.actionsFile.delete();
+        this.entitiesFile.getParentFile().delete();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Controller load() throws MyExceptions {
+        return new Controller(this.entitiesFile, this.actionsFile);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public String command() throws MyExceptions {
+        String command = this.commands[this.next];
+        this.next = (this.next + 1) % this.commands.length;
+        return this.controller.handleCommand(command);
+    }
+}
@@ -0,0 +1,376 @@
+package edu.uob;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load generator speaking the wire format of GameClient: each simulated player sends a
+ * {@code "name: command\n"} line, waits for the reply terminated by the end of transmission marker, and only then
+ * sends its next command.
+ * <p>
+ * Players look around, walk to the locations the last look offered, pick up and drop the artefacts they saw and
+ * try the custom actions of the actions file. In command mode every command opens a new connection, as GameClient
+ * does, in session mode every player keeps one connection.
+ * <p>
+ * From the command line every setting is a {@code key=value} argument, for example
+ * {@code ./mvnw -P jmh test-compile exec:java@load -Dexec.args="local=blocking players=1000 seconds=30"}, where {@code local} starts
+ * a server of that kind (blocking, concurrent, session or nio) in this JVM instead of using host and port.
+ */
+public final class LoadGenerator {
+
+    private static final char END_OF_TRANSMISSION = 4;
+
+    private String host = "localhost";
+    private int port = 8888;
+    private int players = 100;
+    private long warmupMillis = 2000;
+    private long durationMillis = 10000;
+    private boolean session = false;
+    private long seed = 1;
+    private List<Action> customActions = List.of();
+
+    // what the measured part of a run saw
+    public static final class Report {
+        private final LatencyHistogram latencies;
+        private final long durationNanos;
+        private final long rejected;
+        private final long failures;
+
+        private Report(LatencyHistogram latencies, long durationNanos, long rejected, long failures) {
+            this.latencies = latencies;
+            this.durationNanos = durationNanos;
+            this.rejected = rejected;
+            this.failures = failures;
+        }
+
+        public long getCommands() {
+            return this.latencies.getCount();
+        }
+
+        public double getThroughput() {
+            return this.getCommands() * 1e9 / this.durationNanos;
+        }
+
+        // latency in nanoseconds
+        public long getLatencyAtPercentile(double percentile) {
+            return this.latencies.getValueAtPercentile(percentile);
+        }
+
+        // replies of the game which reject the command, which are expected from players trying things out
+        public long getRejected() {
+            return this.rejected;
+        }
+
+        // commands which got no reply, because the connection failed
+        public long getFailures() {
+            return this.failures;
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("commands: ").append(this.getCommands())
+                    .append(", rejected: ").append(this.rejected)
+                    .append(", failures: ").append(this.failures).append(System.lineSeparator());
+            sb.append(String.format("throughput: %.1f commands/s", this.getThroughput())).append(System.lineSeparator());
+            sb.append(String.format("latency (us): mean %.1f, p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+                    this.latencies.getMean() / 1000, this.getLatencyAtPercentile(50) / 1000.0,
+                    this.getLatencyAtPercentile(90) / 1000.0, this.getLatencyAtPercentile(99) / 1000.0,
+                    this.getLatencyAtPercentile(99.9) / 1000.0, this.latencies.getMax() / 1000.0));
+            return sb.toString();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        File entitiesFile = new File(new StringBuilder().append("config").append(File.separator).append("basic-entities.dot").toString());
+        File actionsFile = new File(new StringBuilder().append("config").append(File.separator).append("basic-actions.xml").toString());
+        String local = null;
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) throw new IllegalArgumentException(new StringBuilder().append("Expected key=value but got ").append(arg).toString());
+            String key = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            switch (key) {
+                case "host" -> generator.host(value);
+                case "port" -> generator.port(Integer.parseInt(value));
+                case "players" -> generator.players(Integer.parseInt(value));
+                case "warmup" -> generator.warmupMillis(Long.parseLong(value) * 1000);
+                case "seconds" -> generator.durationMillis(Long.parseLong(value) * 1000);
+                case "mode" -> generator.session("session".equals(value));
+                case "seed" -> generator.seed(Long.parseLong(value));
+                case "entities" -> entitiesFile = new File(value);
+                case "actions" -> actionsFile = new File(value);
+                case "local" -> local = value;
+                default -> throw new IllegalArgumentException(new StringBuilder().append("Unknown setting ").append(key).toString());
+            }
+        }
+        generator.actions(actionsFile);
+        if (local != null) {
+            generator.port(LoadGenerator.startLocalServer(new GameServer(entitiesFile.getAbsoluteFile(), actionsFile.getAbsoluteFile()), local));
+        }
+        System.out.println(generator.run());
+    }
+
+    // starts the server on a free port in a daemon thread and returns the port
+    static int startLocalServer(GameServer server, String kind) throws IOException {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    switch (kind) {
+                        case "concurrent" -> server.concurrentListenOn(port);
+                        case "session" -> server.sessionListenOn(port);
+                        case "nio" -> server.nonBlockingListenOn(port);
+                        default -> server.blockingListenOn(port);
+                    }
+                } catch (IOException e) {
+                    System.out.println(new StringBuilder().append("Local server stopped: ").append(e.getMessage()));
+                }
+            }
+        }, "stag-local-server");
+        thread.setDaemon(true);
+        thread.start();
+        return port;
+    }
+
+    public LoadGenerator host(String host) {
+        this.host = host;
+        return this;
+    }
+
+    public LoadGenerator port(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public LoadGenerator players(int players) {
+        if (players < 1) throw new IllegalArgumentException("The load needs at least one player");
+        this.players = players;
+        return this;
+    }
+
+    public LoadGenerator warmupMillis(long warmupMillis) {
+        this.warmupMillis = warmupMillis;
+        return this;
+    }
+
+    public LoadGenerator durationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+        return this;
+    }
+
+    // one connection per player instead of one per command, which needs a session or nio server
+    public LoadGenerator session(boolean session) {
+        this.session = session;
+        return this;
+    }
+
+    public LoadGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    // the custom actions players try, read from the actions file of the server
+    public LoadGenerator actions(File actionsFile) throws MyExceptions {
+        this.customActions = new GameActions(actionsFile.getAbsoluteFile(), new SymbolTable()).listCustomizedActions();
+        return this;
+    }
+
+    public Report run() throws InterruptedException {
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder rejected = new LongAdder();
+        LongAdder failures = new LongAdder();
+        long start = System.nanoTime();
+        long measureFrom = start + this.warmupMillis * 1_000_000;
+        long measureUntil = measureFrom + this.durationMillis * 1_000_000;
+
+        List<Thread> threads = new ArrayList<>(this.players);
+        for (int i = 0; i < this.players; i++) {
+            SimulatedPlayer player = new SimulatedPlayer(WorldGenerator.playerName(i), new SplittableRandom(this.seed * 1_000_003 + i),
+                    latencies, rejected, failures, measureFrom, measureUntil);
+            // thousands of players each wait on a socket, a small stack keeps their threads cheap
+            Thread thread = new Thread(null, player, new StringBuilder().append("stag-load-").append(i).toString(), 256 * 1024);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        return new Report(latencies, measureUntil - measureFrom, rejected.sum(), failures.sum());
+    }
+
+    private final class SimulatedPlayer implements Runnable {
+        private final String name;
+        private final SplittableRandom random;
+        private final LatencyHistogram latencies;
+        private final LongAdder rejected;
+        private final LongAdder failures;
+        private final long measureFrom;
+        private final long measureUntil;
+        // what the last look showed
+        private final List<String> destinations = new ArrayList<>();
+        private final List<String> artefacts = new ArrayList<>();
+        private final List<String> inventory = new ArrayList<>();
+        private Connection connection;
+
+        private SimulatedPlayer(String name, SplittableRandom random, LatencyHistogram latencies, LongAdder rejected,
+                                LongAdder failures, long measureFrom, long measureUntil) {
+            this.name = name;
+            this.random = random;
+            this.latencies = latencies;
+            this.rejected = rejected;
+            this.failures = failures;
+            this.measureFrom = measureFrom;
+            this.measureUntil = measureUntil;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long now = System.nanoTime();
+                while (now < this.measureUntil) {
+                    String command = this.nextCommand();
+                    String reply;
+                    try {
+                        reply = this.send(command);
+                    } catch (IOException e) {
+                        this.close();
+                        reply = null;
+                        // a full accept backlog refuses connections, so back off instead of spinning
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException interrupted) {
+                            return;
+                        }
+                    }
+                    long end = System.nanoTime();
+                    if (now >= this.measureFrom && end <= this.measureUntil) {
+                        if (reply == null) {
+                            this.failures.increment();
+                        } else {
+                            this.latencies.record(end - now);
+                            if (reply.startsWith("[ERROR]")) this.rejected.increment();
+                        }
+                    }
+                    if (reply != null) this.observe(command, reply);
+                    now = end;
+                }
+            } finally {
+                this.close();
+            }
+        }
+
+        private String nextCommand() {
+            StringBuilder sb = new StringBuilder(this.name).append(": ");
+            int choice = this.random.nextInt(100);
+            if (choice < 35 || this.destinations.isEmpty()) return sb.append("look").toString();
+            if (choice < 65) return sb.append("goto ").append(this.pick(this.destinations)).toString();
+            if (choice < 80 && !LoadGenerator.this.customActions.isEmpty()) {
+                Action action = LoadGenerator.this.customActions.get(this.random.nextInt(LoadGenerator.this.customActions.size()));
+                List<List<String>> phrases = action.getTriggerPhrases();
+                sb.append(String.join(" ", phrases.get(this.random.nextInt(phrases.size()))));
+                for (String subject : action.getSubjects()) sb.append(" ").append(subject);
+                return sb.toString();
+            }
+            if (choice < 90 && !this.artefacts.isEmpty()) return sb.append("get ").append(this.pick(this.artefacts)).toString();
+            if (!this.inventory.isEmpty()) return sb.append("drop ").append(this.pick(this.inventory)).toString();
+            return sb.append("inv").toString();
+        }
+
+        private String pick(List<String> names) {
+            return names.get(this.random.nextInt(names.size()));
+        }
+
+        // remembers the destinations and artefacts from a look, and what the player carries
+        private void observe(String command, String reply) {
+            String action = command.substring(this.name.length() + 2);
+            if (action.equals("look")) {
+                this.destinations.clear();
+                this.artefacts.clear();
+                boolean paths = false;
+                for (String line : reply.split("\n")) {
+                    if (line.startsWith("You have access to these locations:")) {
+                        paths = true;
+                    } else if (paths) {
+                        for (String destination : line.trim().split("\\s+")) {
+                            if (!destination.isEmpty()) this.destinations.add(destination);
+                        }
+                        paths = false;
+                    } else if (line.startsWith("  artefact: ")) {
+                        int end = line.indexOf(',');
+                        this.artefacts.add(line.substring("  artefact: ".length(), end < 0 ? line.length() : end).trim());
+                    }
+                }
+            } else if (action.startsWith("get ") && reply.startsWith("You picked up")) {
+                this.inventory.add(action.substring(4));
+            } else if (action.startsWith("drop ") && reply.startsWith("You dropped")) {
+                this.inventory.remove(action.substring(5));
+            } else if (reply.startsWith("You died")) {
+                this.inventory.clear();
+            }
+        }
+
+        private String send(String command) throws IOException {
+            if (this.connection == null) this.connection = new Connection(LoadGenerator.this.host, LoadGenerator.this.port);
+            String reply = this.connection.send(command);
+            if (!LoadGenerator.this.session) this.close();
+            return reply;
+        }
+
+        private void close() {
+            if (this.connection == null) return;
+            try {
+                this.connection.close();
+            } catch (IOException ignored) {
+                // the connection is dropped either way
+            }
+            this.connection = null;
+        }
+    }
+
+    private static final class Connection implements Closeable {
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final BufferedWriter writer;
+
+        private Connection(String host, int port) throws IOException {
+            this.socket = new Socket(host, port);
+            this.socket.setTcpNoDelay(true);
+            this.reader = new BufferedReader(new InputStreamReader(this.socket.getInputStream()));
+            this.writer = new BufferedWriter(new OutputStreamWriter(this.socket.getOutputStream()));
+        }
+
+        private String send(String command) throws IOException {
+            this.writer.write(command);
+            this.writer.write("\n");
+            this.writer.flush();
+            StringBuilder sb = new StringBuilder();
+            String line = this.reader.readLine();
+            while (line != null && line.indexOf(END_OF_TRANSMISSION) < 0) {
+                sb.append(line).append("\n");
+                line = this.reader.readLine();
+            }
+            if (line == null) throw new IOException("Server disconnected (end-of-stream)");
+            return sb.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.socket.close();
+        }
+    }
+}
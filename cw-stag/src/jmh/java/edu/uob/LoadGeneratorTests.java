@@ -0,0 +1,37 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs with the benchmarks: ./mvnw -P jmh test
+public class LoadGeneratorTests {
+
+    // a short closed-loop run gets every command answered
+    @Test
+    void testLoadGeneratorAgainstBlockingServer() throws Exception {
+        File entitiesFile = Paths.get("config" + File.separator + "basic-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "basic-actions.xml").toAbsolutePath().toFile();
+        int port = LoadGenerator.startLocalServer(new GameServer(entitiesFile, actionsFile), "blocking");
+        assertTimeoutPreemptively(Duration.ofMillis(5000), () -> {
+            while (true) {
+                try (Socket socket = new Socket("localhost", port)) {
+                    return socket.isConnected();
+                } catch (IOException e) {
+                    Thread.sleep(10);
+                }
+            }
+        });
+        LoadGenerator.Report report = new LoadGenerator().port(port).players(8).warmupMillis(100).durationMillis(500)
+                .actions(actionsFile).run();
+        assertTrue(report.getCommands() > 0);
+        assertEquals(0, report.getFailures());
+        assertTrue(report.getLatencyAtPercentile(50) <= report.getLatencyAtPercentile(99.9));
+    }
+}
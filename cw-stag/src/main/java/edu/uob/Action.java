@@ -13,45 +13,59 @@ public class Action {
      * Each row is a full combination of trigger phrase ( cut -> cut, cut down; chop -> chop; cutdown -> cutdown )
      * If `cut` is invalid but `cut down` is a valid trigger,
      * We need access to this 2D array to find out.
+     * Commands are matched against all phrases at once by the TriggerAutomaton built in GameActions.
      */
-    protected final Map<String, List<List<String>>> triggers = new HashMap<>();
-    protected final Set<String> subjects = new HashSet<>();
-    protected final List<String> consumed = new LinkedList<>();
-    protected final List<String> produced = new LinkedList<>();
-    protected String narration;
+    // actions are immutable once loaded, so a single instance is shared by every command
+    protected final Map<String, List<List<String>>> triggers;
+    protected final Set<String> subjects;
+    protected final List<String> consumed;
+    protected final List<String> produced;
+    protected final String narration;
 
-    protected int identifier; // to filter out duplicate actions
+    // the same entities as interned symbols, subjects are sorted for binary search
+    protected final int[] subjectSymbols;
+    protected final int[] consumedSymbols;
+    protected final int[] producedSymbols;
 
-    public Action() {
-    }
+    protected final int identifier; // to filter out duplicate actions
 
-    public int getIdentifier() {
-        return identifier;
+    // built-in actions have no triggers or entities, their narration is computed per command
+    protected Action(int identifier) {
+        this(identifier, List.of(), Set.of(), List.of(), List.of(), null, null);
     }
 
-    public void setIdentifier(int identifier) {
+    public Action(int identifier, List<List<String>> triggerPhrases, Set<String> subjects, List<String> consumed, List<String> produced,
+                  String narration, SymbolTable symbols) {
         this.identifier = identifier;
-    }
-
-    public void putTrigger(List<String> phrase) {
-        List<List<String>> matrix = new LinkedList<>();
-        if (this.triggers.containsKey(phrase.get(0))) {
-            matrix = this.triggers.get(phrase.get(0));
+        Map<String, List<List<String>>> triggers = new HashMap<>();
+        for (List<String> phrase : triggerPhrases) {
+            List<List<String>> matrix = triggers.get(phrase.get(0));
+            if (matrix == null) {
+                matrix = new LinkedList<>();
+                triggers.put(phrase.get(0), matrix);
+            }
+            matrix.add(List.copyOf(phrase));
         }
-        matrix.add(phrase);
-        this.triggers.put(phrase.get(0), matrix);
-    }
-
-    public void addSubject(String subject) {
-        this.subjects.add(subject);
+        this.triggers = Collections.unmodifiableMap(triggers);
+        this.subjects = Collections.unmodifiableSet(new HashSet<>(subjects));
+        this.consumed = List.copyOf(consumed);
+        this.produced = List.copyOf(produced);
+        this.narration = narration;
+        this.subjectSymbols = internAll(this.subjects, symbols);
+        Arrays.sort(this.subjectSymbols);
+        this.consumedSymbols = internAll(this.consumed, symbols);
+        this.producedSymbols = internAll(this.produced, symbols);
     }
 
-    public void addConsumed(String consumed) {
-        this.consumed.add(consumed);
+    private static int[] internAll(Collection<String> names, SymbolTable symbols) {
+        int[] result = new int[names.size()];
+        int i = 0;
+        for (String name : names) result[i++] = symbols.intern(name);
+        return result;
     }
 
-    public void addProduced(String produced) {
-        this.produced.add(produced);
+    public int getIdentifier() {
+        return identifier;
     }
 
     public Set<String> getSubjects() {
@@ -66,64 +80,50 @@ public class Action {
         return this.produced;
     }
 
-    public void setNarration(String narration) {
-        this.narration = narration;
+    public int[] getSubjectSymbols() {
+        return this.subjectSymbols;
     }
 
-    public String getNarration() {
-        return this.narration;
+    public int[] getConsumedSymbols() {
+        return this.consumedSymbols;
     }
 
-    public List<String> getFirstWords() {
-        List<String> list = new LinkedList<>();
-
-        this.triggers.forEach(new BiConsumer<String, List<List<String>>>() {
-            @Override
-            public void accept(String key, List<List<String>> value) {
-                list.add(key);
-            }
-        });
-
-        return list;
+    public int[] getProducedSymbols() {
+        return this.producedSymbols;
     }
 
-    // cut down tree:
-    // 1. `cut` is trigger. then `down` is considered as decorative, no matter whether `cut down` is trigger or not.
-    // 2. `cut` is not trigger, must fit both words continuously.
-    public boolean isThisAction(List<String> words) {
-        // words is the segment that begins from the possible trigger word:
-        // `use axe to cut down tree` -> words = `cut down tree`
-
-        List<String> phrase = new LinkedList<>();
-
-        List<List<String>> triggersPossible = this.triggers.get(words.get(0));
-        if(triggersPossible == null) return false;
+    public String getNarration() {
+        return this.narration;
+    }
 
-        for (String word : words) {
-            phrase.add(word);
-            for (List<String> validPhrases : triggersPossible) {
-                if (Util.ListEquals(validPhrases, phrase)) return true;
-            }
+    public List<List<String>> getTriggerPhrases() {
+        List<List<String>> phrases = new LinkedList<>();
+        for (List<List<String>> matrix : this.triggers.values()) {
+            phrases.addAll(matrix);
         }
-
-        return false;
+        return phrases;
     }
 
-    public boolean checkSubjects(Set<String> candidates, boolean strict) throws MyExceptions {
-        // built-in commands
+    // built-in commands take no entity or exactly one entity, custom actions are checked by checkSubjects
+    public boolean isValidBasicUsage(IntMap<GameEntity> candidates) {
         if (this instanceof InvAction || this instanceof LookAction || this instanceof HealthAction) {
-            if (!candidates.isEmpty()) throw new MyExceptions.InvalidBasicAction();
-            return true;
+            return candidates.isEmpty();
         }
         if (this instanceof GotoAction || this instanceof GetAction || this instanceof DropAction) {
-            if (candidates.size() != 1) throw new MyExceptions.InvalidBasicAction();
-            return true;
+            return candidates.size() == 1;
         }
+        return true;
+    }
+
+    // candidates are the entities of the command, keyed by symbol
+    public boolean checkSubjects(IntMap<GameEntity> candidates, boolean strict) {
+        // built-in commands have negative identifiers and are checked by isValidBasicUsage
+        if (this.identifier < 0) return true;
         if(!strict) {
             // Partial command: candidates contains at least one subject
             boolean hasSubject = false;
-            for (String subject : this.subjects) {
-                if (candidates.contains(subject)) {
+            for (int subject : this.subjectSymbols) {
+                if (candidates.containsKey(subject)) {
                     hasSubject = true;
                     break;
                 }
@@ -131,15 +131,15 @@ public class Action {
             if (!hasSubject) return false;
         }else{
             // strict mode: all subjects must be found
-            for (String subject : this.subjects) {
-                if (!candidates.contains(subject)) {
+            for (int subject : this.subjectSymbols) {
+                if (!candidates.containsKey(subject)) {
                     return false;
                 }
             }
         }
         // Extraneous entity: candidates must be included in subjects
-        for (String candidate : candidates) {
-            if (!this.subjects.contains(candidate)) return false;
+        for (int i = 0; i < candidates.capacity(); i++) {
+            if (candidates.valueAt(i) != null && Arrays.binarySearch(this.subjectSymbols, candidates.keyAt(i)) < 0) return false;
         }
 
         return true;
@@ -0,0 +1,158 @@
+package edu.uob;
+
+/**
+ * A custom action compiled against the world it runs in, when the world and the actions are loaded.
+ * <p>
+ * Subjects, consumed and produced entities are resolved once to the locations and items they name, and every
+ * consumed or produced entity becomes an operation of a known kind, so checking and applying the action walks
+ * arrays of entities instead of looking each symbol up and testing its type on every command. Entities never
+ * change identity while the world runs, a plan only has to be compiled again when the world or the actions do.
+ */
+final class ActionPlan {
+
+    enum Operation {
+        REMOVE_PATH, DECREASE_HEALTH, TO_STOREROOM, ADD_PATH, INCREASE_HEALTH, TO_HERE
+    }
+
+    private final Action action;
+    private final Document document;
+    private final Location storeroom;
+
+    // in the order of the sorted subject symbols, the location a subject names or null if it names an item
+    private final int[] subjects;
+    private final Location[] subjectLocations;
+    // artefacts which another player must not hold
+    private final Artefact[] consumedArtefacts;
+    private final Artefact[] producedArtefacts;
+
+    // the consumed entities, then the produced ones, with the location or the item each operation moves
+    private final Operation[] operations;
+    private final Location[] locations;
+    private final MovableEntity[] items;
+    private final Artefact[] artefacts;
+
+    private ActionPlan(Action action, Document document, int operationCount) {
+        this.action = action;
+        this.document = document;
+        this.storeroom = document.getStoreroom();
+        this.subjects = action.getSubjectSymbols();
+        this.subjectLocations = new Location[this.subjects.length];
+        this.consumedArtefacts = artefactsOf(action.getConsumedSymbols(), document);
+        this.producedArtefacts = artefactsOf(action.getProducedSymbols(), document);
+        this.operations = new Operation[operationCount];
+        this.locations = new Location[operationCount];
+        this.items = new MovableEntity[operationCount];
+        this.artefacts = new Artefact[operationCount];
+    }
+
+    static ActionPlan compile(Action action, Document document, int healthSymbol) {
+        int[] consumed = action.getConsumedSymbols();
+        int[] produced = action.getProducedSymbols();
+        int count = 0;
+        for (int symbol : consumed) {
+            if (hasOperation(document, symbol, healthSymbol)) count++;
+        }
+        for (int symbol : produced) {
+            if (hasOperation(document, symbol, healthSymbol)) count++;
+        }
+        ActionPlan plan = new ActionPlan(action, document, count);
+        for (int i = 0; i < plan.subjects.length; i++) {
+            // if subject is location, the player must be at that location
+            if (document.getEntity(plan.subjects[i]) instanceof Location location) plan.subjectLocations[i] = location;
+        }
+        count = 0;
+        for (int symbol : consumed) {
+            if (hasOperation(document, symbol, healthSymbol)) {
+                plan.classify(count++, symbol, healthSymbol, Operation.REMOVE_PATH, Operation.DECREASE_HEALTH, Operation.TO_STOREROOM);
+            }
+        }
+        for (int symbol : produced) {
+            if (hasOperation(document, symbol, healthSymbol)) {
+                plan.classify(count++, symbol, healthSymbol, Operation.ADD_PATH, Operation.INCREASE_HEALTH, Operation.TO_HERE);
+            }
+        }
+        return plan;
+    }
+
+    // entities which are neither locations, health nor items change nothing and get no operation
+    private static boolean hasOperation(Document document, int symbol, int healthSymbol) {
+        GameEntity entity = document.getEntity(symbol);
+        return entity instanceof Location || symbol == healthSymbol || entity instanceof MovableEntity;
+    }
+
+    // the rejection of the action for this player, or null if it can be applied
+    CommandResult check(Player player) {
+        Location current = player.getCurrent();
+        for (int i = 0; i < this.subjects.length; i++) {
+            if (this.subjectLocations[i] != null) {
+                if (this.subjectLocations[i] != current) return CommandResult.NOT_AT_SUBJECT_LOCATION;
+                continue;
+            }
+            // check subjects must be in player's inventory or in current location
+            if (!player.hasItem(this.subjects[i]) && !current.hasItem(this.subjects[i])) return CommandResult.SUBJECT_NOT_AVAILABLE;
+        }
+        // check consumed and produced must not be in another player's inventory
+        for (Artefact artefact : this.consumedArtefacts) {
+            if (artefact.getOwner() != null && artefact.getOwner() != player) return CommandResult.CONSUMED_OWNED_BY_OTHER;
+        }
+        for (Artefact artefact : this.producedArtefacts) {
+            if (artefact.getOwner() != null && artefact.getOwner() != player) return CommandResult.PRODUCED_OWNED_BY_OTHER;
+        }
+        return null;
+    }
+
+    // consumes and produces the entities of the action around the player
+    void apply(Player player) {
+        Location here = player.getCurrent();
+        for (int i = 0; i < this.operations.length; i++) {
+            switch (this.operations[i]) {
+                case REMOVE_PATH -> this.document.removeEdge(here, this.locations[i]);
+                case ADD_PATH -> this.document.addEdge(here, this.locations[i]);
+                case DECREASE_HEALTH -> player.decrease();
+                case INCREASE_HEALTH -> player.increase();
+                case TO_STOREROOM -> this.move(i, this.storeroom, player);
+                case TO_HERE -> this.move(i, here, player);
+            }
+        }
+    }
+
+    // moves the item of an operation from wherever it is, taking it from the player if they hold it
+    private void move(int operation, Location to, Player player) {
+        MovableEntity item = this.items[operation];
+        item.getCurrent().removeItem(item.getSymbol());
+        item.setCurrent(to);
+        to.addItem(item);
+        Artefact artefact = this.artefacts[operation];
+        if (artefact != null && artefact.getOwner() == player) {
+            artefact.setOwner(null);
+            player.removeItem(artefact.getSymbol());
+        }
+    }
+
+    private void classify(int operation, int symbol, int healthSymbol, Operation path, Operation health, Operation move) {
+        GameEntity entity = this.document.getEntity(symbol);
+        if (entity instanceof Location location) {
+            this.operations[operation] = path;
+            this.locations[operation] = location;
+        } else if (symbol == healthSymbol) {
+            this.operations[operation] = health;
+        } else {
+            this.operations[operation] = move;
+            this.items[operation] = (MovableEntity) entity;
+            if (entity instanceof Artefact artefact) this.artefacts[operation] = artefact;
+        }
+    }
+
+    private static Artefact[] artefactsOf(int[] symbols, Document document) {
+        int count = 0;
+        for (int symbol : symbols) {
+            if (document.getEntity(symbol) instanceof Artefact) count++;
+        }
+        Artefact[] artefacts = new Artefact[count];
+        count = 0;
+        for (int symbol : symbols) {
+            if (document.getEntity(symbol) instanceof Artefact artefact) artefacts[count++] = artefact;
+        }
+        return artefacts;
+    }
+}
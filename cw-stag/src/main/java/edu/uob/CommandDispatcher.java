@@ -0,0 +1,128 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+// Network threads enqueue commands, a single world thread applies them in batches so the world is never shared.
+// Commands are parsed on the world thread too: a reload swaps the symbols and actions they resolve to under the
+// same lock, so a command parsed beforehand could name an action which no longer exists.
+final class CommandDispatcher {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int BATCH_SIZE = 256;
+    private static final String SHUTTING_DOWN = "[ERROR]: The server is shutting down!";
+
+    private final GameServer server;
+    private final BlockingQueue<PendingCommand> queue;
+    private final Thread worldThread;
+    private volatile boolean stopped = false;
+
+    CommandDispatcher(GameServer server) {
+        this(server, DEFAULT_CAPACITY);
+    }
+
+    CommandDispatcher(GameServer server, int capacity) {
+        this.server = server;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.worldThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                CommandDispatcher.this.drainLoop();
+            }
+        }, "stag-world");
+        this.worldThread.setDaemon(true);
+        this.worldThread.start();
+    }
+
+    /**
+     * Enqueues a command for the world thread, blocking while the queue is full.
+     *
+     * @param command The incoming command to be processed
+     * @return A future completed with the result once the world thread applied the command
+     */
+    CompletableFuture<String> submit(String command) {
+        PendingCommand pending = new PendingCommand(command);
+        try {
+            this.queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.result.complete(SHUTTING_DOWN);
+        }
+        this.rejectIfStopped();
+        return pending.result;
+    }
+
+    /**
+     * Enqueues a command for the world thread unless the queue is full, for threads which must not block.
+     *
+     * @param command The incoming command to be processed
+     * @return A future completed with the result once the world thread applied the command, or null if the queue is full
+     */
+    CompletableFuture<String> offer(String command) {
+        PendingCommand pending = new PendingCommand(command);
+        if (!this.queue.offer(pending)) return null;
+        this.rejectIfStopped();
+        return pending.result;
+    }
+
+    // stops the world thread, commands not applied yet are answered with an error
+    void shutdown() {
+        this.stopped = true;
+        this.worldThread.interrupt();
+    }
+
+    // a command enqueued after the world thread stopped would never be answered
+    private void rejectIfStopped() {
+        if (!this.stopped) return;
+        PendingCommand pending = this.queue.poll();
+        while (pending != null) {
+            pending.result.complete(SHUTTING_DOWN);
+            pending = this.queue.poll();
+        }
+    }
+
+    private void drainLoop() {
+        List<PendingCommand> batch = new ArrayList<>(BATCH_SIZE);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(this.queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            this.queue.drainTo(batch, BATCH_SIZE - 1);
+            for (PendingCommand pending : batch) {
+                try {
+                    pending.reply = this.server.handleCommand(pending.command);
+                } catch (RuntimeException e) {
+                    // a broken command must not stop the world thread
+                    pending.failure = e;
+                }
+            }
+            // one fsync for the whole batch, before any of its replies is sent
+            this.server.commitJournal();
+            for (PendingCommand pending : batch) {
+                if (pending.failure != null) {
+                    pending.result.completeExceptionally(pending.failure);
+                } else {
+                    pending.result.complete(pending.reply);
+                }
+            }
+            batch.clear();
+        }
+        this.rejectIfStopped();
+    }
+
+    private static final class PendingCommand {
+        private final String command;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private String reply;
+        private RuntimeException failure;
+
+        private PendingCommand(String command) {
+            this.command = command;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package edu.uob;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the commands applied to the world, replayed over the last snapshot to recover from a crash.
+ * <p>
+ * A record is written once a command changed the world: a player joining, or a player and the resolved action and
+ * entities of a command which was applied, other than look, inv and health which only read the world. Replaying
+ * them needs no parsing and no trigger matching.
+ * The file is preallocated and mapped, records are copied straight into the mapping and {@link #commit()}, which the
+ * world thread calls after every batch of commands, forces the range written since the last commit, so durability
+ * costs one msync per batch rather than one write and fsync per command.
+ * <p>
+ * After the header every record is its length and its CRC32 as two ints, followed by the body, and the last record
+ * is followed by a zero length which ends the journal. A torn record, from a crash during a write, fails its length
+ * or checksum and is overwritten by the next record. Records are numbered, and a snapshot stores the number of the
+ * last one applied, so compacting writes a snapshot and then empties the journal, and a crash between the two only
+ * leaves records the replay skips.
+ */
+final class CommandJournal implements Closeable {
+
+    static final int MAGIC = 0x53544A4C; // "STJL"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+
+    private static final int JOIN = 0;
+    private static final int ACTION = 1;
+    private static final int FRAME_SIZE = 8;
+    // the file grows by doubling from this size, and is never shrunk by a compaction
+    private static final int INITIAL_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private MappedByteBuffer mapped;
+    private final WorldSnapshot.Encoder record = new WorldSnapshot.Encoder();
+    private final long compactEvery;
+    private int position = HEADER_SIZE; // where the next record goes, on the terminating zero length
+    private int forced = HEADER_SIZE; // records before this are on disk
+    private long records = 0; // since the last compaction
+
+    private CommandJournal(FileChannel channel, MappedByteBuffer mapped, long compactEvery) {
+        this.channel = channel;
+        this.mapped = mapped;
+        this.compactEvery = compactEvery;
+    }
+
+    /**
+     * Opens the journal, creating it if needed. Its records are applied by {@link #replay(Controller)}.
+     *
+     * @param compactEvery The number of records after which {@link #shouldCompact()} asks for a compaction.
+     */
+    static CommandJournal open(Path file, long compactEvery) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new MyExceptions.InvalidSnapshotException("journal larger than a mapped buffer");
+            // mapping past the end of the file extends it with zeros, which read as the end of the journal
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, INITIAL_SIZE));
+            if (size == 0) {
+                mapped.putInt(0, MAGIC).putInt(4, VERSION);
+                mapped.force();
+            } else if (size < HEADER_SIZE || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                throw new MyExceptions.InvalidSnapshotException("not a journal file of this version");
+            }
+            return new CommandJournal(channel, mapped, compactEvery);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Applies every record newer than the world, ends the journal before a torn record, and leaves it ready to append.
+     *
+     * @return The number of records applied
+     */
+    long replay(Controller controller) {
+        ByteBuffer contents = this.mapped.duplicate();
+        int position = HEADER_SIZE;
+        long applied = 0;
+        CRC32 crc = new CRC32();
+        while (position <= contents.capacity() - FRAME_SIZE) {
+            int length = contents.getInt(position);
+            if (length <= 0 || length > contents.capacity() - position - FRAME_SIZE) break;
+            ByteBuffer body = contents.slice(position + FRAME_SIZE, length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != contents.getInt(position + 4)) break;
+            if (this.apply(body, controller)) applied++;
+            this.records++;
+            position += FRAME_SIZE + length;
+        }
+        // a partly written record is dropped, the next record goes where it started
+        this.position = position;
+        this.forced = position;
+        this.terminate();
+        return applied;
+    }
+
+    private boolean apply(ByteBuffer body, Controller controller) {
+        int kind = body.get();
+        long sequence = WorldSnapshot.getVarLong(body);
+        String playerName = WorldSnapshot.getString(body);
+        // the snapshot already holds this record
+        if (sequence <= controller.getAppliedSequence()) return false;
+        if (kind == JOIN) {
+            controller.replayJoin(sequence, playerName);
+            return true;
+        }
+        int identifier = WorldSnapshot.getVarInt(body);
+        int[] entities = new int[WorldSnapshot.getVarInt(body)];
+        for (int i = 0; i < entities.length; i++) entities[i] = WorldSnapshot.getVarInt(body);
+        controller.replayAction(sequence, playerName, identifier, entities);
+        return true;
+    }
+
+    void appendJoin(long sequence, String playerName) {
+        this.begin(JOIN, sequence, playerName);
+        this.end();
+    }
+
+    void appendAction(long sequence, String playerName, int identifier, IntMap<GameEntity> entities) {
+        this.begin(ACTION, sequence, playerName);
+        // built-in identifiers are negative, so they take five bytes
+        this.record.putVarInt(identifier);
+        this.record.putVarInt(entities.size());
+        for (int i = 0; i < entities.capacity(); i++) {
+            if (entities.valueAt(i) != null) this.record.putVarInt(entities.keyAt(i));
+        }
+        this.end();
+    }
+
+    private void begin(int kind, long sequence, String playerName) {
+        this.record.clear();
+        this.record.putInt(0);
+        this.record.putInt(0);
+        this.record.putByte(kind);
+        this.record.putVarLong(sequence);
+        this.record.putString(playerName);
+    }
+
+    // frames the record and copies it into the mapping, followed by a new terminating zero length
+    private void end() {
+        int length = this.record.position() - FRAME_SIZE;
+        this.record.putInt(0, length);
+        this.record.putInt(4, this.record.crc(FRAME_SIZE, FRAME_SIZE + length));
+        this.reserve(FRAME_SIZE + length + 4);
+        this.mapped.put(this.position, this.record.contents(), 0, FRAME_SIZE + length);
+        this.position += FRAME_SIZE + length;
+        this.terminate();
+        this.records++;
+    }
+
+    private void terminate() {
+        if (this.position <= this.mapped.capacity() - 4) this.mapped.putInt(this.position, 0);
+    }
+
+    private void reserve(int bytes) {
+        if (this.position <= this.mapped.capacity() - bytes) return;
+        long size = Math.max(2L * this.mapped.capacity(), (long) this.position + bytes);
+        if (size > Integer.MAX_VALUE) throw new MyExceptions.InvalidSnapshotException("journal larger than a mapped buffer");
+        try {
+            // the records so far are forced through the old mapping, the larger one then carries on from them
+            this.mapped.force(this.forced, this.position - this.forced);
+            this.mapped = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // forces the records appended since the last commit, with their terminator, to disk
+    void commit() {
+        if (this.position == this.forced) return;
+        this.mapped.force(this.forced, Math.min(this.position + 4, this.mapped.capacity()) - this.forced);
+        this.forced = this.position;
+    }
+
+    boolean shouldCompact() {
+        return this.records >= this.compactEvery;
+    }
+
+    // saves the world to the snapshot, which then holds every record, and empties the journal
+    void compact(Controller controller, Path snapshot) throws IOException {
+        this.commit();
+        WorldSnapshot.write(controller, snapshot);
+        this.position = HEADER_SIZE;
+        this.forced = HEADER_SIZE;
+        this.terminate();
+        this.mapped.force(HEADER_SIZE, 4);
+        this.records = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.commit();
+        } finally {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package edu.uob;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Latency histograms for every stage of a command and counters of the command results, by status.
+ * <p>
+ * Metrics are off unless the JVM runs with {@code -Dstag.metrics=true} or they are enabled through JMX.
+ * While off, every call is one volatile read and reads no clock. The world thread records, and any thread
+ * may read the numbers, since histograms and counters are lock-free.
+ */
+final class CommandMetrics implements CommandMetricsMXBean {
+
+    static final String OBJECT_NAME = "edu.uob:type=CommandMetrics";
+
+    enum Stage {
+        PLAYER, TOKENIZE, ENTITIES, ACTIONS, CUSTOM_CHECK, APPLY, TOTAL
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final CommandResult.Status[] STATUSES = CommandResult.Status.values();
+
+    private volatile boolean enabled;
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGES.length];
+    private final LongAdder[] results = new LongAdder[STATUSES.length];
+
+    CommandMetrics(boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < this.stages.length; i++) this.stages[i] = new LatencyHistogram();
+        for (int i = 0; i < this.results.length; i++) this.results[i] = new LongAdder();
+    }
+
+    CommandMetrics() {
+        this(Boolean.getBoolean("stag.metrics"));
+    }
+
+    // start time of a command, zero when disabled
+    long start() {
+        return this.enabled ? System.nanoTime() : 0;
+    }
+
+    // records the stage which began at from and returns when it ended, which is when the next stage begins
+    long record(Stage stage, long from) {
+        if (!this.enabled) return 0;
+        long now = System.nanoTime();
+        this.stages[stage.ordinal()].record(now - from);
+        return now;
+    }
+
+    void finish(CommandResult result, long start) {
+        if (!this.enabled) return;
+        this.stages[Stage.TOTAL.ordinal()].record(System.nanoTime() - start);
+        this.results[result.getStatus().ordinal()].increment();
+    }
+
+    void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getCommandCount() {
+        return this.stages[Stage.TOTAL.ordinal()].getCount();
+    }
+
+    @Override
+    public Map<String, Long> getResultCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (CommandResult.Status status : STATUSES) counts.put(status.name(), this.results[status.ordinal()].sum());
+        return counts;
+    }
+
+    long getResultCount(CommandResult.Status status) {
+        return this.results[status.ordinal()].sum();
+    }
+
+    LatencyHistogram getStage(Stage stage) {
+        return this.stages[stage.ordinal()];
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        return this.byStage(LatencyHistogram::getCount);
+    }
+
+    @Override
+    public Map<String, Double> getStageMeanNanos() {
+        Map<String, Double> means = new LinkedHashMap<>();
+        for (Stage stage : STAGES) means.put(stage.name(), this.stages[stage.ordinal()].getMean());
+        return means;
+    }
+
+    @Override
+    public Map<String, Long> getStageP50Nanos() {
+        return this.byStage(histogram -> histogram.getValueAtPercentile(50));
+    }
+
+    @Override
+    public Map<String, Long> getStageP99Nanos() {
+        return this.byStage(histogram -> histogram.getValueAtPercentile(99));
+    }
+
+    @Override
+    public Map<String, Long> getStageP999Nanos() {
+        return this.byStage(histogram -> histogram.getValueAtPercentile(99.9));
+    }
+
+    @Override
+    public Map<String, Long> getStageMaxNanos() {
+        return this.byStage(LatencyHistogram::getMax);
+    }
+
+    private Map<String, Long> byStage(ToLongFunction<LatencyHistogram> value) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Stage stage : STAGES) values.put(stage.name(), value.applyAsLong(this.stages[stage.ordinal()]));
+        return values;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : this.stages) histogram.reset();
+        for (LongAdder counter : this.results) counter.reset();
+    }
+
+    @Override
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : STAGES) {
+            LatencyHistogram histogram = this.stages[stage.ordinal()];
+            sb.append(String.format("%-12s count %d, mean %.0f ns, p50 %d ns, p99 %d ns, p99.9 %d ns, max %d ns",
+                    stage.name(), histogram.getCount(), histogram.getMean(), histogram.getValueAtPercentile(50),
+                    histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9), histogram.getMax()))
+                    .append(System.lineSeparator());
+        }
+        for (CommandResult.Status status : STATUSES) {
+            sb.append(status.name()).append(": ").append(this.results[status.ordinal()].sum()).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
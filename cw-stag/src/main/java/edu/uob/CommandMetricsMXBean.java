@@ -0,0 +1,36 @@
+package edu.uob;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link CommandMetrics}, registered as {@code edu.uob:type=CommandMetrics} by the server.
+ * <p>
+ * Stages are keyed by their name in {@link CommandMetrics.Stage}, results by {@link CommandResult.Status}.
+ * Latencies are in nanoseconds.
+ */
+public interface CommandMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getCommandCount();
+
+    Map<String, Long> getResultCounts();
+
+    Map<String, Long> getStageCounts();
+
+    Map<String, Double> getStageMeanNanos();
+
+    Map<String, Long> getStageP50Nanos();
+
+    Map<String, Long> getStageP99Nanos();
+
+    Map<String, Long> getStageP999Nanos();
+
+    Map<String, Long> getStageMaxNanos();
+
+    void reset();
+
+    String report();
+}
@@ -0,0 +1,58 @@
+package edu.uob;
+
+// The outcome of one command. It is created per command, so the shared action definitions never carry player state.
+// Rejected commands are results too: they are returned rather than thrown, so rejecting costs no stack trace.
+public final class CommandResult {
+
+    public enum Status {
+        SUCCESS, PLAYER_DIED,
+        // rejections
+        INVALID_PLAYER, UNKNOWN_COMMAND, AMBIGUOUS_COMMAND, INVALID_BASIC_ACTION, UNAVAILABLE_ENTITY, NO_PATH
+    }
+
+    // rejections with a fixed narration are shared
+    public static final CommandResult NO_PLAYER_NAME = reject(Status.INVALID_PLAYER, "[ERROR]: Player name not specified!");
+    public static final CommandResult INVALID_PLAYER_NAME = reject(Status.INVALID_PLAYER, "[ERROR]: invalid player name!");
+    public static final CommandResult DUPLICATE_PLAYER_NAME = reject(Status.INVALID_PLAYER, "[ERROR]: Duplicate name for entities!");
+    public static final CommandResult UNKNOWN_COMMAND = reject(Status.UNKNOWN_COMMAND, "[ERROR]: I can't recognize this command.");
+    public static final CommandResult AMBIGUOUS_COMMAND = reject(Status.AMBIGUOUS_COMMAND,
+            "[ERROR]: The command is too ambiguous and I don't understand what exactly you would like to perform.");
+    public static final CommandResult INVALID_BASIC_ACTION = reject(Status.INVALID_BASIC_ACTION, "[ERROR]: Invalid usage of basic action!");
+    public static final CommandResult NOT_AT_SUBJECT_LOCATION = reject(Status.UNAVAILABLE_ENTITY, "[ERROR]: The player is not at the subject location!");
+    public static final CommandResult SUBJECT_NOT_AVAILABLE = reject(Status.UNAVAILABLE_ENTITY, "[ERROR]: The item is not available to the player!");
+    public static final CommandResult CONSUMED_OWNED_BY_OTHER = reject(Status.UNAVAILABLE_ENTITY, "[ERROR]: The item to be consumed is owned by another player!");
+    public static final CommandResult PRODUCED_OWNED_BY_OTHER = reject(Status.UNAVAILABLE_ENTITY, "[ERROR]: The item to be produced is owned by another player!");
+    public static final CommandResult NO_PATH = reject(Status.NO_PATH, "[ERROR]: No direct path to that location!");
+
+    private final Status status;
+    private final String narration;
+
+    private CommandResult(Status status, String narration) {
+        this.status = status;
+        this.narration = narration;
+    }
+
+    public static CommandResult success(String narration) {
+        return new CommandResult(Status.SUCCESS, narration);
+    }
+
+    public static CommandResult playerDied(String narration) {
+        return new CommandResult(Status.PLAYER_DIED, narration);
+    }
+
+    public static CommandResult reject(Status status, String narration) {
+        return new CommandResult(status, narration);
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    public boolean isRejected() {
+        return this.status != Status.SUCCESS && this.status != Status.PLAYER_DIED;
+    }
+
+    public String getNarration() {
+        return this.narration;
+    }
+}
@@ -0,0 +1,65 @@
+package edu.uob;
+
+/**
+ * Splits a command into words and resolves them to symbols in one pass, without allocating.
+ * <p>
+ * The punctuation rules are those of the original filter: letters and white space are kept, any other character
+ * is only kept between two letters (don't, ice-cream) and dropped otherwise, words are split on white space and
+ * lowercased. The buffers are reused, so a tokenizer belongs to the thread applying commands.
+ */
+final class CommandTokenizer {
+
+    private final SymbolTable symbols;
+    private char[] word = new char[64];
+    private int[] tokens = new int[16];
+
+    CommandTokenizer(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Tokenizes the command from index from onwards.
+     *
+     * @return The number of words, whose symbols are the first entries of {@link #tokens()}
+     */
+    int tokenize(String command, int from) {
+        int length = command.length();
+        if (this.word.length < length - from) this.word = new char[length - from];
+        int count = 0;
+        int size = 0;
+        for (int i = from; i < length; i++) {
+            char c = command.charAt(i);
+            if (isSpace(c)) {
+                if (size > 0) count = this.emit(count, size);
+                size = 0;
+                continue;
+            }
+            boolean kept = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (i > from && java.lang.Character.isLetter(command.charAt(i - 1))
+                    && i < length - 1 && java.lang.Character.isLetter(command.charAt(i + 1)));
+            // a dropped character does not split the word
+            if (kept) this.word[size++] = java.lang.Character.toLowerCase(c);
+        }
+        if (size > 0) count = this.emit(count, size);
+        return count;
+    }
+
+    int[] tokens() {
+        return this.tokens;
+    }
+
+    private int emit(int count, int size) {
+        if (count == this.tokens.length) {
+            int[] grown = new int[count * 2];
+            System.arraycopy(this.tokens, 0, grown, 0, count);
+            this.tokens = grown;
+        }
+        this.tokens[count] = this.symbols.lookup(this.word, 0, size);
+        return count + 1;
+    }
+
+    // white space as matched by \s
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
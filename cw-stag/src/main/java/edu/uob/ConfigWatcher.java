@@ -0,0 +1,102 @@
+package edu.uob;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches game files and runs a task on a daemon thread when one of them changes.
+ * <p>
+ * Editors often write a file in several steps, so the changes are collected until the directories have been quiet
+ * for a while, and then the task of every changed file runs once, in the order the files were watched.
+ */
+final class ConfigWatcher implements Closeable {
+
+    private static final long QUIET_MILLIS = 200;
+
+    private final WatchService service;
+    private final Map<Path, Runnable> tasks = new LinkedHashMap<>(); // key: absolute path of a watched file
+    private final Set<Path> directories = new LinkedHashSet<>();
+
+    ConfigWatcher() throws IOException {
+        this.service = FileSystems.getDefault().newWatchService();
+    }
+
+    // must be called before start
+    void watch(File file, Runnable task) throws IOException {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        this.tasks.put(path, task);
+        if (this.directories.add(path.getParent())) {
+            path.getParent().register(this.service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+    }
+
+    void start() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ConfigWatcher.this.watchLoop();
+            }
+        }, "stag-reload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watchLoop() {
+        Set<Path> changed = new LinkedHashSet<>();
+        try {
+            while (true) {
+                this.collect(this.service.take(), changed);
+                // wait until the files are quiet
+                WatchKey key = this.service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    this.collect(key, changed);
+                    key = this.service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                for (Map.Entry<Path, Runnable> entry : this.tasks.entrySet()) {
+                    if (changed.contains(entry.getKey())) this.run(entry.getValue());
+                }
+                changed.clear();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path name) {
+                Path path = directory.resolve(name);
+                if (this.tasks.containsKey(path)) changed.add(path);
+            }
+        }
+        key.reset();
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            // a broken reload must not stop watching
+            ServerLog.LOG.warn("Reload failed", e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.service.close();
+    }
+}
@@ -2,354 +2,492 @@ package edu.uob;
 
 import java.io.File;
 import java.util.*;
-import java.util.function.Predicate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 // [kj24716@it106252 cw-stag]$ ./mvnw clean test -Dtest=edu.uob.MyTests
 
 public class Controller {
     // In document, no Action type variables. In actions, no Entity type variables. Controller is the bridge.
     private final Document document;
-    private final GameActions actions;
+    // replaced as a whole, with the plans, when the actions file is reloaded
+    private GameActions actions;
+    // entity names and trigger words of both files share one symbol table
+    private final SymbolTable symbols;
+    private final CommandTokenizer tokenizer;
+    private final int healthSymbol;
+    private final CommandMetrics metrics = new CommandMetrics();
+    // compiled custom actions, index: identifier of the action
+    private ActionPlan[] plans;
+    // journal of the applied commands, if any, and the sequence number of the last one applied to this world
+    private CommandJournal journal = null;
+    private long appliedSequence = 0;
 
     public Controller(File entitiesFile, File actionsFile) throws MyExceptions {
-        this.document = new Document(entitiesFile);
-        this.actions = new GameActions(actionsFile);
+        this.symbols = new SymbolTable();
+        this.tokenizer = new CommandTokenizer(this.symbols);
+        // the actions file is read on another thread while the entities file is read here, and the actions are
+        // interned once the world is loaded, so symbols are assigned in the same order as a sequential load
+        CompletableFuture<List<GameActions.Definition>> definitions = CompletableFuture.supplyAsync(new Supplier<List<GameActions.Definition>>() {
+            @Override
+            public List<GameActions.Definition> get() {
+                return GameActions.readDefinitions(actionsFile);
+            }
+        });
+        this.document = new Document(entitiesFile, this.symbols);
+        try {
+            this.actions = GameActions.fromDefinitions(definitions.join(), this.symbols);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof MyExceptions cause) throw cause;
+            throw new MyExceptions(e.getCause().getMessage());
+        }
+        this.healthSymbol = this.symbols.intern("health");
+        this.validateWorld();
+        this.validateActions(this.actions, this.symbols);
+        this.plans = this.compilePlans(this.actions);
     }
 
-    public String handleCommand(String command) throws MyExceptions {
-        // process player name
-        AbstractMap.SimpleEntry<String, Player> result = this.processPlayer(command);
-        command = result.getKey();
-        Player player = result.getValue();
-
-        // remove punctuations and split commands by white space
-        List<String> words = new LinkedList<>(Arrays.stream(this.removeCommandPunctuations(command).toLowerCase().trim().split("\\s+")).toList());
-
-        // extract all entities
-        Set<String> entities = new HashSet<>();
-        for (String word : words) {
-            if (this.document.hasEntity(word) || this.document.hasLocation(word)) {
-                entities.add(word);
+    // for a world which is already built, such as one restored from a snapshot
+    Controller(Document document, GameActions actions) {
+        this.symbols = document.getSymbols();
+        this.tokenizer = new CommandTokenizer(this.symbols);
+        this.document = document;
+        this.actions = actions;
+        this.healthSymbol = this.symbols.intern("health");
+        this.plans = this.compilePlans(this.actions);
+    }
+
+    // custom actions read again from the actions file, checked and compiled against this world
+    static final class ActionReload {
+        private final SymbolTable symbols;
+        private final GameActions actions;
+        private final ActionPlan[] plans;
+
+        private ActionReload(SymbolTable symbols, GameActions actions, ActionPlan[] plans) {
+            this.symbols = symbols;
+            this.actions = actions;
+            this.plans = plans;
+        }
+    }
+
+    /**
+     * Builds, validates and compiles the actions read again from the actions file, while commands keep running.
+     * Their words are interned into a copy of the symbol table, so actions which fail leave the world untouched.
+     * The entities of the world must not change meanwhile, which they only do when the entities file is reloaded.
+     *
+     * @param definitions The actions as read by {@link GameActions#readDefinitions(File)}.
+     */
+    ActionReload prepareActions(List<GameActions.Definition> definitions) throws MyExceptions {
+        SymbolTable symbols = this.symbols.copy();
+        GameActions actions = GameActions.fromDefinitions(definitions, symbols);
+        this.validateActions(actions, symbols);
+        return new ActionReload(symbols, actions, this.compilePlans(actions));
+    }
+
+    /**
+     * Replaces every custom action by prepared ones, between two commands.
+     */
+    void replaceActions(ActionReload reload) {
+        this.symbols.internAll(reload.symbols);
+        this.actions = reload.actions;
+        this.plans = reload.plans;
+    }
+
+    /**
+     * Adds the entities and locations of a world read again from the entities file which this world does not have yet,
+     * between two commands. Entities already in the world keep their state.
+     *
+     * @return The number of entities, locations and paths added
+     */
+    int addEntities(Document loaded) {
+        int added = this.document.addEntitiesFrom(loaded);
+        // subjects and products of the actions may name the new entities
+        if (added > 0) this.plans = this.compilePlans(this.actions);
+        return added;
+    }
+
+    // must run again whenever the entities of the world or the actions change
+    private ActionPlan[] compilePlans(GameActions actions) {
+        List<Action> customizedActions = actions.listCustomizedActions();
+        ActionPlan[] plans = new ActionPlan[customizedActions.size()];
+        for (int i = 0; i < plans.length; i++) {
+            plans[i] = ActionPlan.compile(customizedActions.get(i), this.document, this.healthSymbol);
+        }
+        return plans;
+    }
+
+    // checks the names of the world, once both files are loaded
+    private void validateWorld() throws MyExceptions {
+        for (Location location : this.document.listLocations()) {
+            // a location named after another location or an item is hidden by it
+            if (this.document.getEntity(location.getSymbol()) != location) throw new MyExceptions.DuplicateEntityException();
+        }
+        for (String playerName : this.document.getPlayers().keySet()) {
+            if (this.document.getEntity(this.symbols.lookup(playerName)) != null) throw new MyExceptions.DuplicateEntityException();
+        }
+    }
+
+    // checks the actions against the world, with the symbol table they were interned into
+    private void validateActions(GameActions actions, SymbolTable symbols) throws MyExceptions {
+        for (Action action : actions.listCustomizedActions()) {
+            for (List<String> phrase : action.getTriggerPhrases()) {
+                // a built-in keyword takes precedence, and an entity name is read as the entity
+                if (phrase.size() != 1) continue;
+                if (GameActions.builtInActions.containsKey(phrase.get(0))) {
+                    throw new MyExceptions.InvalidActionException(new StringBuilder().append("trigger ").append(phrase.get(0)).append(" is a built-in command").toString());
+                }
+                if (this.document.getEntity(symbols.lookup(phrase.get(0))) != null) {
+                    throw new MyExceptions.InvalidActionException(new StringBuilder().append("trigger ").append(phrase.get(0)).append(" is an entity").toString());
+                }
             }
+            this.checkEntities(action.getSubjectSymbols(), false, symbols);
+            this.checkEntities(action.getConsumedSymbols(), true, symbols);
+            this.checkEntities(action.getProducedSymbols(), true, symbols);
+        }
+    }
+
+    private void checkEntities(int[] entities, boolean allowHealth, SymbolTable symbols) throws MyExceptions {
+        for (int symbol : entities) {
+            if (this.document.getEntity(symbol) != null || (allowHealth && symbol == this.healthSymbol)) continue;
+            throw new MyExceptions.InvalidActionException(new StringBuilder().append("unknown entity ").append(symbols.name(symbol)).toString());
         }
+    }
+
+    // the stages below are package-private for the benchmarks in src/jmh
+    Document getDocument() {
+        return this.document;
+    }
+
+    GameActions getActions() {
+        return this.actions;
+    }
+
+    CommandTokenizer getTokenizer() {
+        return this.tokenizer;
+    }
+
+    public String handleCommand(String command) throws MyExceptions {
+        return this.execute(command).getNarration();
+    }
+
+    CommandMetrics getMetrics() {
+        return this.metrics;
+    }
 
-        Action action = this.processActions(words, entities).entrySet().stream().toList().get(0).getValue();
-        this.checkCustomActions(action, player);
-        this.handleCommandActions(action, player, entities);
+    CommandJournal getJournal() {
+        return this.journal;
+    }
+
+    // commands applied from now on are appended to the journal
+    void setJournal(CommandJournal journal) {
+        this.journal = journal;
+    }
+
+    long getAppliedSequence() {
+        return this.appliedSequence;
+    }
+
+    void setAppliedSequence(long appliedSequence) {
+        this.appliedSequence = appliedSequence;
+    }
 
+    public CommandResult execute(String command) {
+        long start = this.metrics.start();
+        CommandResult result = this.execute(command, start);
+        this.metrics.finish(result, start);
+        return result;
+    }
+
+    // runs the stages of a command, recording each of them from mark onwards
+    private CommandResult execute(String command, long mark) {
+        // process player name
+        int separator = command.indexOf(':');
+        if (separator < 0) return CommandResult.NO_PLAYER_NAME;
+        String playerName = command.substring(0, separator);
+        if (!this.isValidPlayerName(playerName)) return CommandResult.INVALID_PLAYER_NAME;
+        Player player = this.processPlayer(playerName);
+        if (player == null) return CommandResult.DUPLICATE_PLAYER_NAME;
+        mark = this.metrics.record(CommandMetrics.Stage.PLAYER, mark);
+
+        // remove punctuations, split commands by white space and resolve each word to its symbol once
+        int count = this.tokenizer.tokenize(command, separator + 1);
+        int[] tokens = this.tokenizer.tokens();
+        mark = this.metrics.record(CommandMetrics.Stage.TOKENIZE, mark);
+        // extract all entities, keyed by symbol
+        IntMap<GameEntity> entities = new IntMap<>();
+        for (int i = 0; i < count; i++) {
+            GameEntity entity = this.document.getEntity(tokens[i]);
+            if (entity != null) entities.put(tokens[i], entity);
+        }
+        mark = this.metrics.record(CommandMetrics.Stage.ENTITIES, mark);
+
+        IntMap<Action> possibleActions = new IntMap<>();
+        CommandResult rejection = this.processActions(tokens, count, entities, possibleActions);
+        mark = this.metrics.record(CommandMetrics.Stage.ACTIONS, mark);
+        if (rejection != null) return rejection;
+        Action action = possibleActions.values().get(0);
+        rejection = this.checkCustomActions(action, player);
+        mark = this.metrics.record(CommandMetrics.Stage.CUSTOM_CHECK, mark);
+        if (rejection != null) return rejection;
+        CommandResult commandResult = this.apply(action, player, entities);
+        if (!commandResult.isRejected() && this.journal != null && changesWorld(action)) {
+            this.journal.appendAction(++this.appliedSequence, player.getName(), action.getIdentifier(), entities);
+        }
+        this.metrics.record(CommandMetrics.Stage.APPLY, mark);
+        return commandResult;
+    }
+
+    private CommandResult apply(Action action, Player player, IntMap<GameEntity> entities) {
+        CommandResult commandResult = this.handleCommandActions(action, player, entities);
         // if player died:
-        if (player.getHealth() == 0) {
-            return this.processPlayerDeath(player);
+        if (!commandResult.isRejected() && player.getHealth() == 0) {
+            commandResult = this.processPlayerDeath(player);
         }
-        return action.getNarration();
+        return commandResult;
+    }
+
+    // look, inv and health only read the world, so they are not journaled
+    private static boolean changesWorld(Action action) {
+        return !(action instanceof LookAction || action instanceof InvAction || action instanceof HealthAction);
+    }
+
+    // applies a journal record again, after the snapshot the journal continues from
+    void replayJoin(long sequence, String playerName) {
+        if (this.processPlayer(playerName) == null) throw new MyExceptions.InvalidSnapshotException("journal diverged from the world");
+        this.appliedSequence = sequence;
+    }
+
+    void replayAction(long sequence, String playerName, int identifier, int[] entitySymbols) {
+        Player player = this.processPlayer(playerName);
+        Action action = this.actions.getAction(identifier);
+        IntMap<GameEntity> entities = new IntMap<>(entitySymbols.length);
+        for (int symbol : entitySymbols) {
+            GameEntity entity = this.document.getEntity(symbol);
+            if (entity == null) throw new MyExceptions.InvalidSnapshotException("journal names an unknown entity");
+            entities.put(symbol, entity);
+        }
+        if (player == null || action == null || this.checkCustomActions(action, player) != null
+                || this.apply(action, player, entities).isRejected()) {
+            throw new MyExceptions.InvalidSnapshotException("journal diverged from the world");
+        }
+        this.appliedSequence = sequence;
     }
 
-    private String processPlayerDeath(Player player) {
+    private CommandResult processPlayerDeath(Player player) {
         for (Artefact item : player.listInventory()) {
             // set owner of artefact to null, remove artefact from storeroom, remove artefact from inventory, put artefact to location
             item.setOwner(null);
-            item.getCurrent().removeItem(item.getName());
+            item.getCurrent().removeItem(item.getSymbol());
             item.setCurrent(player.getCurrent());
-            player.removeItem(item.getName());
+            player.removeItem(item.getSymbol());
             player.getCurrent().addItem(item);
         }
         player.setCurrent(this.document.getLocation(0));
         player.resetHealth();
-        return "You died and lost all items and are teleported to the start location.";
+        return CommandResult.playerDied("You died and lost all items and are teleported to the start location.");
     }
 
-    private AbstractMap.SimpleEntry<String, Player> processPlayer(String command) throws MyExceptions {
-        Player player = null;
-        List<String> seg = Arrays.stream(command.split(":", 2)).toList();
-        if (seg.size() != 2) throw new MyExceptions.InvalidCommandException("[ERROR]: Player name not specified!");
-
-        String playerName = seg.get(0);
-        // check player name does not include invalid chars
+    // check player name does not include invalid chars
+    private boolean isValidPlayerName(String playerName) {
         for (int i = 0; i < playerName.length(); i++) {
             if (!java.lang.Character.isLetter(playerName.charAt(i)) && playerName.charAt(i) != ' ' && playerName.charAt(i) != '\'' && playerName.charAt(i) != '-') {
-                throw new MyExceptions.InvalidCommandException("[ERROR]: invalid player name!");
+                return false;
             }
         }
+        return true;
+    }
+
+    // returns null if the name is already taken by an entity
+    private Player processPlayer(String playerName) {
         // if player exists already, use it, otherwise create it
-        if (this.document.getPlayers().containsKey(playerName)) {
-            player = this.document.getPlayers().get(playerName);
-        } else {
-            player = this.document.newPlayer(playerName);
-        }
-        command = seg.get(1);
-        if (player == null)
-            throw new MyExceptions.InvalidCommandException("[ERROR]: The server's logic is broken and cannot find a valid player?");
-        return new AbstractMap.SimpleEntry<>(command, player);
-    }
-
-    private String removeCommandPunctuations(String command) {
-        StringBuilder filteringPunctuation = new StringBuilder();
-        for (int i = 0; i < command.length(); i++) {
-            if (String.valueOf(command.charAt(i)).matches("[a-zA-Z\\s]")) {
-                filteringPunctuation.append(command.charAt(i));
-            } else {
-                if (i > 0 && java.lang.Character.isLetter(command.charAt(i - 1)) && i < command.length() - 1 && java.lang.Character.isLetter(command.charAt(i + 1))) {
-                    filteringPunctuation.append(command.charAt(i));
-                }
-            }
-        }
-        return filteringPunctuation.toString();
+        Player player = this.document.getPlayers().get(playerName);
+        if (player != null) return player;
+        if (this.document.hasEntity(playerName)) return null;
+        player = this.document.newPlayer(playerName);
+        // a new player changes the world even if the command is then rejected
+        if (this.journal != null) this.journal.appendJoin(++this.appliedSequence, playerName);
+        return player;
     }
 
-    private Map<Integer, Action> processActions(List<String> words, Set<String> entities) throws MyExceptions {
-        Map<Integer, Action> possibleActions = new HashMap<>();
+    // fills possibleActions with the only matching action, or returns the rejection
+    CommandResult processActions(int[] tokens, int count, IntMap<GameEntity> entities, IntMap<Action> possibleActions) {
         // find possible actions by trigger
-        for (int i = 0; i < words.size(); i++) {
-            if (this.actions.mightBeAction(words.get(i))) {
-                List<Action> list = this.actions.possibleActions(words.subList(i, words.size()), entities);
-                for (Action action : list) {
-                    possibleActions.put(action.getIdentifier(), action);
-                }
-            }
-        }
+        this.actions.matchActions(tokens, count, entities, possibleActions);
         // no possible action found
         if (possibleActions.isEmpty()) {
-            throw new MyExceptions.InvalidCommandException("[ERROR]: I can't recognize this command.");
+            return CommandResult.UNKNOWN_COMMAND;
         }
 
-        possibleActions = this.checkActionSubjects(words, possibleActions, entities);
+        CommandResult rejection = this.checkActionSubjects(possibleActions, entities);
+        if (rejection != null) return rejection;
         // no valid action found
         if (possibleActions.isEmpty()) {
-            throw new MyExceptions.InvalidCommandException("[ERROR]: I can't recognize this command.");
+            return CommandResult.UNKNOWN_COMMAND;
         }
         // Ambiguous commands
         if (possibleActions.size() > 1) {
-            throw new MyExceptions.InvalidCommandException("[ERROR]: The command is too ambiguous and I don't understand what exactly you would like to perform.");
+            return CommandResult.AMBIGUOUS_COMMAND;
         }
         // only one possible action is left
-        return possibleActions;
+        return null;
     }
 
-    private Map<Integer, Action> checkActionSubjects(List<String> words, Map<Integer, Action> possibleActions, Set<String> entities) throws MyExceptions {
-        try {
-            // filter without strict mode
-            possibleActions.entrySet().removeIf(new Predicate<Map.Entry<Integer, Action>>() {
-                @Override
-                public boolean test(Map.Entry<Integer, Action> entry) {
-                    return !entry.getValue().checkSubjects(entities, false);
-                }
-            });
-            // if the command is possibly ambiguous, filter again with strict mode
-            if(possibleActions.size() > 1){
-                possibleActions.entrySet().removeIf(new Predicate<Map.Entry<Integer, Action>>() {
-                    @Override
-                    public boolean test(Map.Entry<Integer, Action> entry) {
-                        return !entry.getValue().checkSubjects(entities, true);
-                    }
-                });
+    CommandResult checkActionSubjects(IntMap<Action> possibleActions, IntMap<GameEntity> entities) {
+        List<Action> candidates = possibleActions.values();
+        // a basic action used with the wrong number of entities rejects the whole command
+        for (Action action : candidates) {
+            if (!action.isValidBasicUsage(entities)) return CommandResult.INVALID_BASIC_ACTION;
+        }
+        // filter without strict mode
+        for (Action action : candidates) {
+            if (!action.checkSubjects(entities, false)) possibleActions.remove(action.getIdentifier());
+        }
+        // if the command is possibly ambiguous, filter again with strict mode
+        if(possibleActions.size() > 1){
+            for (Action action : possibleActions.values()) {
+                if (!action.checkSubjects(entities, true)) possibleActions.remove(action.getIdentifier());
             }
-        } catch (MyExceptions e) {
-            throw new MyExceptions.InvalidCommandException(new StringBuilder().append("[ERROR]: ").append(e.getMessage()).toString());
         }
-        return possibleActions;
+        return null;
     }
 
-    private void checkCustomActions(Action action, Player player) throws MyExceptions {
-        for (String subject : action.getSubjects()) {
-            if (subject == null) continue;
-            // if subject is location, the player must be at that location
-            if (this.document.hasLocation(subject)) {
-                if (!subject.equals(player.getCurrent().getName())) {
-                    throw new MyExceptions.InvalidCommandException("[ERROR]: The player is not at the subject location!");
-                }
-                continue;
-            }
-            // check subjects must be in player's inventory or in current location
-            if (!player.hasItem(subject) && !player.getCurrent().hasItem(subject)) {
-                throw new MyExceptions.InvalidCommandException("[ERROR]: The item is not available to the player!");
-            }
-        }
-
-        // check consumed and produced must not be in another player's inventory
-        for (String consumed : action.getConsumed()) {
-            GameEntity consumedObject = this.document.getEntity(consumed);
-            if (consumedObject instanceof Artefact && ((Artefact) consumedObject).getOwner() != null && ((Artefact) consumedObject).getOwner() != player) {
-                throw new MyExceptions.InvalidCommandException("[ERROR]: The item to be consumed is owned by another player!");
-            }
-        }
-        for (String produced : action.getProduced()) {
-            GameEntity producedObject = this.document.getEntity(produced);
-            if (producedObject instanceof Artefact && ((Artefact) producedObject).getOwner() != null && ((Artefact) producedObject).getOwner() != player) {
-                throw new MyExceptions.InvalidCommandException("[ERROR]: The item to be produced is owned by another player!");
-            }
-        }
+    private CommandResult checkCustomActions(Action action, Player player) {
+        // built-in actions have no subjects to check
+        if (action.getIdentifier() < 0) return null;
+        return this.plans[action.getIdentifier()].check(player);
     }
 
-    private void handleInvAction(Player player, Action action) {
+    private String handleInvAction(Player player) {
         StringBuilder sb = new StringBuilder();
         sb.append(player.getName()).append("'s inventory has:").append(System.lineSeparator());
         for (Artefact artefact : player.listInventory()) {
             sb.append(artefact.getName()).append(" ");
         }
-        action.setNarration(sb.toString());
+        return sb.toString();
     }
 
-    private void handleLookAction(Player player, Action action) {
+    private String handleLookAction(Player player) {
+        Location current = player.getCurrent();
+        String rendered = current.getRendered();
+        if (rendered == null) {
+            rendered = this.renderLocation(current);
+            current.setRendered(rendered);
+        }
+        // the other players depend on who is looking, so they are appended from the occupants of the location
+        StringBuilder sb = new StringBuilder(rendered.length() + 32).append(rendered);
+        for (Player other : current.listPlayers()) {
+            if (other != player) {
+                sb.append(other.getName()).append(" ");
+            }
+        }
+        return sb.toString();
+    }
+
+    // everything in the reply to look which only changes with the items and paths of the location
+    private String renderLocation(Location location) {
         StringBuilder sb = new StringBuilder();
-        sb.append("Description to current location: ").append(player.getCurrent().getDescription()).append(System.lineSeparator());
-        if (this.document.getEdgesFrom(player.getCurrent().getName()) != null) {
+        sb.append("Description to current location: ").append(location.getDescription()).append(System.lineSeparator());
+        List<Location> destinations = this.document.getEdgesFrom(location);
+        if (!destinations.isEmpty()) {
             sb.append("You have access to these locations:").append(System.lineSeparator());
-            for (String to : this.document.getEdgesFrom(player.getCurrent().getName())) {
-                sb.append("  ").append(to).append(" ");
+            for (Location to : destinations) {
+                sb.append("  ").append(to.getName()).append(" ");
             }
         } else {
             sb.append("You have no access to other locations.");
         }
         sb.append(System.lineSeparator());
         sb.append("These game entities can be found here:").append(System.lineSeparator());
-        for (GameEntity item : player.getCurrent().listItems()) {
+        for (GameEntity item : location.listItems()) {
             sb.append(item.toString()).append(System.lineSeparator());
         }
         sb.append("Other players here:").append(System.lineSeparator());
-        for (Map.Entry<String, Player> entry : this.document.getPlayers().entrySet()) {
-            if (!entry.getKey().equals(player.getName()) && entry.getValue().getCurrent().equals(player.getCurrent())) {
-                sb.append(entry.getKey()).append(" ");
-            }
-        }
-        action.setNarration(sb.toString());
+        return sb.toString();
     }
 
-    private void handleGetAction(Player player, Action action, String itemName) throws MyExceptions {
+    private CommandResult handleGetAction(Player player, GameEntity entity) {
+        String itemName = entity.getName();
         // check the item is indeed artefact
-        if (!(this.document.getEntity(itemName) instanceof Artefact)) {
-            throw new MyExceptions.InvalidCommandException(new StringBuilder().append("[ERROR]: The item ")
+        if (!(entity instanceof Artefact)) {
+            return CommandResult.reject(CommandResult.Status.UNAVAILABLE_ENTITY, new StringBuilder().append("[ERROR]: The item ")
                     .append(itemName).append(" that you would like to collect is not an artefact!").toString());
         }
         // check item is at current location
-        if (((Artefact) this.document.getEntity(itemName)).getCurrent() != player.getCurrent()) {
-            throw new MyExceptions.InvalidCommandException(new StringBuilder().append("[ERROR]: The item ")
+        if (((Artefact) entity).getCurrent() != player.getCurrent()) {
+            return CommandResult.reject(CommandResult.Status.UNAVAILABLE_ENTITY, new StringBuilder().append("[ERROR]: The item ")
                     .append(itemName).append(" that you would like to collect is not at current location!").toString());
         }
         // transfer the artefact from current location to storeroom
-        MovableEntity item = player.getCurrent().removeItem(itemName);
-        this.document.getLocation("storeroom").addItem(item);
+        MovableEntity item = player.getCurrent().removeItem(entity.getSymbol());
+        this.document.getStoreroom().addItem(item);
         // set the location of artefact to be storeroom
-        item.setCurrent(this.document.getLocation("storeroom"));
+        item.setCurrent(this.document.getStoreroom());
         // record the artefact in player's inventory
         player.insertItem((Artefact) item);
         ((Artefact) item).setOwner(player);
-        // set output string
-        action.setNarration(new StringBuilder().append("You picked up the ").append(itemName).toString());
+        return CommandResult.success(new StringBuilder().append("You picked up the ").append(itemName).toString());
     }
 
-    private void handleDropAction(Player player, Action action, String itemName) throws MyExceptions {
+    private CommandResult handleDropAction(Player player, GameEntity entity) {
+        String itemName = entity.getName();
         // check the item is indeed artefact
-        if (!(this.document.getEntity(itemName) instanceof Artefact)) {
-            throw new MyExceptions.InvalidCommandException(new StringBuilder().append("[ERROR]: The item ")
+        if (!(entity instanceof Artefact)) {
+            return CommandResult.reject(CommandResult.Status.UNAVAILABLE_ENTITY, new StringBuilder().append("[ERROR]: The item ")
                     .append(itemName).append(" that you would like to drop is not an artefact!").toString());
         }
         // check the artefact can be found in player's inventory and storeroom
-        if (!player.hasItem(itemName)) {
-            throw new MyExceptions.InvalidCommandException(new StringBuilder().append("[ERROR]: The item ")
+        if (!player.hasItem(entity.getSymbol())) {
+            return CommandResult.reject(CommandResult.Status.UNAVAILABLE_ENTITY, new StringBuilder().append("[ERROR]: The item ")
                     .append(itemName).append(" that you would like to drop cannot be found in player's inventory!").toString());
         }
-        if (!this.document.getLocation("storeroom").hasItem(itemName)) {
-            throw new MyExceptions.InvalidCommandException(new StringBuilder().append("[ERROR]: The item ")
+        if (!this.document.getStoreroom().hasItem(entity.getSymbol())) {
+            return CommandResult.reject(CommandResult.Status.UNAVAILABLE_ENTITY, new StringBuilder().append("[ERROR]: The item ")
                     .append(itemName).append(" that you would like to drop cannot be found!").toString());
         }
         // remove artefact from inventory
-        player.removeItem(itemName);
+        player.removeItem(entity.getSymbol());
         // remove artefact from storeroom
-        Artefact item = (Artefact) this.document.getLocation("storeroom").removeItem(itemName);
+        Artefact item = (Artefact) this.document.getStoreroom().removeItem(entity.getSymbol());
         // put artefact to location
         player.getCurrent().addItem(item);
         // reset artefact owner
         item.setOwner(null);
         // set artefact current location
         item.setCurrent(player.getCurrent());
-        // set output string
-        action.setNarration(new StringBuilder().append("You dropped the ").append(itemName).toString());
+        return CommandResult.success(new StringBuilder().append("You dropped the ").append(itemName).toString());
     }
 
-    private void handleGotoAction(Player player, Action action, String locationName) throws MyExceptions {
-        Location location = this.document.getLocation(locationName);
+    private CommandResult handleGotoAction(Player player, GameEntity entity) {
+        String locationName = entity.getName();
         // check target location is indeed a location
-        if (location == null)
-            throw new MyExceptions.InvalidCommandException(new StringBuilder().append(locationName).append(" is not a valid location!").toString());
+        if (!(entity instanceof Location location))
+            return CommandResult.reject(CommandResult.Status.NO_PATH, new StringBuilder().append(locationName).append(" is not a valid location!").toString());
         // check there is a path from current location to that location
-        if (!this.document.hasEdge(player.getCurrent().getName(), locationName)) {
-            throw new MyExceptions.InvalidCommandException("[ERROR]: No direct path to that location!");
+        if (!this.document.hasEdge(player.getCurrent(), location)) {
+            return CommandResult.NO_PATH;
         }
         player.setCurrent(location);
-        action.setNarration(new StringBuilder().append("Arrived at new location: ").append(locationName).toString());
+        return CommandResult.success(new StringBuilder().append("Arrived at new location: ").append(locationName).toString());
     }
 
-    private void handleCommandActions(Action action, Player player, Set<String> entities) throws MyExceptions {
-        // perform basic actions: perform and add narration to action
+    private CommandResult handleCommandActions(Action action, Player player, IntMap<GameEntity> entities) {
+        // perform basic actions: the narration is computed for this command only
         if (action instanceof InvAction) {
-            this.handleInvAction(player, action);
+            return CommandResult.success(this.handleInvAction(player));
         } else if (action instanceof LookAction) {
-            this.handleLookAction(player, action);
+            return CommandResult.success(this.handleLookAction(player));
         } else if (action instanceof HealthAction) {
-            action.setNarration(new StringBuilder().append("Player ").append(player.getName()).append(" is of health ").append(player.getHealth()).toString());
+            return CommandResult.success(new StringBuilder().append("Player ").append(player.getName()).append(" is of health ").append(player.getHealth()).toString());
         } else if (action instanceof GetAction) {
-            this.handleGetAction(player, action, entities.iterator().next());
+            return this.handleGetAction(player, entities.values().get(0));
         } else if (action instanceof DropAction) {
-            this.handleDropAction(player, action, entities.iterator().next());
+            return this.handleDropAction(player, entities.values().get(0));
         } else if (action instanceof GotoAction) {
-            this.handleGotoAction(player, action, entities.iterator().next());
+            return this.handleGotoAction(player, entities.values().get(0));
         }
         // custom actions: consume and produce
-        else {
-            for (String consumed : action.getConsumed()) {
-                this.consumeEntity(consumed, player.getCurrent(), player);
-            }
-            for (String produced : action.getProduced()) {
-                this.produceEntity(produced, player.getCurrent(), player);
-            }
-        }
-    }
-
-    public void consumeEntity(String entity, Location currentLocation, Player player) {
-        // consume location: remove the path
-        if (this.document.hasLocation(entity)) {
-            this.document.removeEdge(currentLocation.getName(), entity);
-            return;
-        }
-
-        // consume health: decrease player's health
-        if ("health".equals(entity)) {
-            player.decrease();
-            return;
-        }
-
-        // consume other entity: move it from its location to storeroom
-        MovableEntity item = ((MovableEntity) this.document.getEntity(entity)).getCurrent().removeItem(entity);
-        this.document.getLocation("storeroom").addItem(item);
-        // if it is owned by current player, remove it from player's inventory
-        if (item instanceof Artefact && ((Artefact) item).getOwner() == player) {
-            ((Artefact) item).setOwner(null);
-            player.removeItem(item.getName());
-        }
-        item.setCurrent(this.document.getLocation("storeroom"));
-    }
-
-    public void produceEntity(String entity, Location currentLocation, Player player) {
-        // produce location: add a path
-        if (this.document.hasLocation(entity)) {
-            this.document.addEdge(currentLocation.getName(), entity);
-            return;
-        }
-
-        // produce health: increase player's health
-        if ("health".equals(entity)) {
-            player.increase();
-            return;
-        }
-
-        // produce other entity: move it from its location to current location
-        MovableEntity item = ((MovableEntity) this.document.getEntity(entity)).getCurrent().removeItem(entity);
-        item.setCurrent(currentLocation);
-        currentLocation.addItem(item);
-        // if it is owned by current player, remove it from player's inventory
-        if (item instanceof Artefact && ((Artefact) item).getOwner() == player) {
-            ((Artefact) item).setOwner(null);
-            player.removeItem(item.getName());
-        }
+        this.plans[action.getIdentifier()].apply(player);
+        return CommandResult.success(action.getNarration());
     }
 }
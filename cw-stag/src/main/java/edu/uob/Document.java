@@ -1,33 +1,29 @@
 package edu.uob;
 
-import com.alexmerz.graphviz.Parser;
-import com.alexmerz.graphviz.objects.Edge;
-import com.alexmerz.graphviz.objects.Graph;
-import com.alexmerz.graphviz.objects.Node;
-
 import java.io.File;
 import java.io.FileReader;
+import java.io.Reader;
 import java.util.*;
-import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 public class Document {
-    private int vertices = 0;
-    private final Map<Integer, Location> locations = new HashMap<>();
-    private final Map<String, Integer> reverseLocations = new HashMap<>();
-    private final Map<String, Set<String>> adj = new HashMap<>();
+    // locations indexed in insertion order, the index is also their vertex in the graph of paths
+    private final List<Location> locations = new ArrayList<>();
+    private final LocationGraph graph = new LocationGraph();
 
-    private final Map<String, GameEntity> allEntities = new HashMap<>();
+    // locations and entities indexed by the symbol of their name, players are not included
+    private final SymbolTable symbols;
+    private final List<GameEntity> entitiesBySymbol = new ArrayList<>();
+    private Location storeroom;
 
     private final Map<String, Player> players = new HashMap<>();
 
-    public Document(File entitiesFile) throws MyExceptions {
-        try {
-            Parser parser = new Parser();
-            FileReader reader = new FileReader(entitiesFile);
-            parser.parse(reader);
-            this.setDocument(parser.getGraphs().get(0));
+    public Document(File entitiesFile, SymbolTable symbols) throws MyExceptions {
+        this.symbols = symbols;
+        try (Reader reader = new FileReader(entitiesFile)) {
+            // the world is filled in while the file is read, no graph of the whole file is built
+            LayoutHandler handler = new LayoutHandler();
+            new DotReader(reader).read(handler);
+            handler.finish();
             // init player location
             for (Map.Entry<String, Player> entry : this.players.entrySet()) {
                 entry.getValue().setCurrent(this.getLocation(0));
@@ -37,62 +33,138 @@ public class Document {
         }
     }
 
+    // an empty world, filled by a snapshot restore instead of the parser
+    Document(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
     public void addLocation(Location e) {
-        this.locations.put(this.vertices, e);
-        this.reverseLocations.put(e.getName().toLowerCase(), this.vertices);
-        this.vertices++;
+        e.setIndex(this.graph.addVertex());
+        this.locations.add(e);
+        this.register(e);
     }
 
     public boolean hasLocation(String name) {
-        return this.reverseLocations.containsKey(name);
+        return this.getEntity(this.symbols.lookup(name)) instanceof Location;
     }
 
     public Location getLocation(String name) {
-        return this.locations.get(this.reverseLocations.get(name));
+        return this.getEntity(this.symbols.lookup(name)) instanceof Location location ? location : null;
+    }
+
+    public Location getStoreroom() {
+        return this.storeroom;
+    }
+
+    void setStoreroom(Location storeroom) {
+        this.storeroom = storeroom;
+    }
+
+    // places a restored item
+    void placeItem(MovableEntity item, Location location) {
+        this.register(item);
+        item.setCurrent(location);
+        location.addItem(item);
+    }
+
+    void addPlayer(Player player) {
+        this.players.put(player.getName(), player);
+    }
+
+    List<Location> listLocations() {
+        return Collections.unmodifiableList(this.locations);
+    }
+
+    /**
+     * Adds what another world read from an entities file has and this one does not: locations, items whose name is
+     * not taken, and the paths to and from the new locations. Nothing already here is moved or removed, since the
+     * players have changed it since it was loaded. The items of the other world are moved into this one.
+     *
+     * @return The number of locations, items and paths added
+     */
+    int addEntitiesFrom(Document loaded) {
+        int added = 0;
+        Set<String> newLocations = new HashSet<>();
+        for (Location location : loaded.locations) {
+            Location live = this.getLocation(location.getName());
+            if (live == null) {
+                if (this.getEntity(this.symbols.lookup(location.getName())) != null || this.players.containsKey(location.getName())) continue;
+                live = new Location(location.getName());
+                live.setAttributes(new HashMap<>(location.attributes));
+                this.addLocation(live);
+                newLocations.add(live.getName());
+                added++;
+            }
+            for (MovableEntity item : location.listItems()) {
+                // players in the file only matter for a new world
+                if (item instanceof Player || this.getEntity(this.symbols.lookup(item.getName())) != null
+                        || this.players.containsKey(item.getName())) continue;
+                this.placeItem(item, live);
+                added++;
+            }
+        }
+        for (Location from : loaded.locations) {
+            for (Location to : loaded.getEdgesFrom(from)) {
+                if (!newLocations.contains(from.getName()) && !newLocations.contains(to.getName())) continue;
+                Location liveFrom = this.getLocation(from.getName());
+                Location liveTo = this.getLocation(to.getName());
+                if (liveFrom == null || liveTo == null || this.hasEdge(liveFrom, liveTo)) continue;
+                this.addEdge(liveFrom, liveTo);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    public SymbolTable getSymbols() {
+        return this.symbols;
+    }
+
+    // interns the name of the entity and indexes the entity by its symbol
+    private void register(GameEntity entity) {
+        int symbol = this.symbols.intern(entity.getName());
+        entity.setSymbol(symbol);
+        while (this.entitiesBySymbol.size() <= symbol) this.entitiesBySymbol.add(null);
+        this.entitiesBySymbol.set(symbol, entity);
     }
 
     public Location getLocation(int index) {
+        if (index < 0 || index >= this.locations.size()) return null;
         return this.locations.get(index);
     }
 
+    public int countLocations() {
+        return this.locations.size();
+    }
+
     public void addEdge(String from, String to) throws MyExceptions {
         if (!this.hasLocation(from) || !this.hasLocation(to)) {
             throw new MyExceptions.InvalidEdgeException();
         }
-
-        Set<String> pathTo = this.adj.get(from);
-        if (pathTo == null) {
-            pathTo = new HashSet<>();
-        }
-        pathTo.add(to);
-        this.adj.put(from, pathTo);
+        this.addEdge(this.getLocation(from), this.getLocation(to));
     }
 
-    public boolean removeEdge(String from, String to) {
-        if (!this.adj.containsKey(from)) return false;
+    public void addEdge(Location from, Location to) {
+        if (this.graph.addEdge(from.getIndex(), to.getIndex())) from.invalidateRendered();
+    }
 
-        for (String dest : this.adj.get(from)) {
-            if (dest.equals(to)) {
-                this.adj.get(from).remove(to);
-                return true;
-            }
-        }
-        return false;
+    public boolean removeEdge(Location from, Location to) {
+        if (!this.graph.removeEdge(from.getIndex(), to.getIndex())) return false;
+        from.invalidateRendered();
+        return true;
     }
 
-    public boolean hasEdge(String from, String to) {
-        if (!this.hasLocation(from)) return false;
-        if (!this.adj.containsKey(from)) return false;
-        for (String dest : this.adj.get(from)) {
-            if (dest.equals(to)) {
-                return true;
-            }
-        }
-        return false;
+    public boolean hasEdge(Location from, Location to) {
+        return this.graph.hasEdge(from.getIndex(), to.getIndex());
     }
 
-    public Set<String> getEdgesFrom(String from) {
-        return this.adj.get(from.toLowerCase());
+    // destinations of the paths from a location, in index order
+    public List<Location> getEdgesFrom(Location from) {
+        List<Location> destinations = new ArrayList<>(this.graph.degree(from.getIndex()));
+        for (int i = 0; i < this.graph.degree(from.getIndex()); i++) {
+            destinations.add(this.locations.get(this.graph.destination(from.getIndex(), i)));
+        }
+        return destinations;
     }
 
     public Player newPlayer(String name) throws MyExceptions {
@@ -110,44 +182,29 @@ public class Document {
 
     // action triggers cannot be named after an entity -- check it using below method
     public boolean hasEntity(String name) {
-        return this.allEntities.containsKey(name);
+        GameEntity entity = this.getEntity(this.symbols.lookup(name));
+        return entity != null && !(entity instanceof Location);
     }
 
-    public GameEntity getEntity(String name) {
-        return this.allEntities.get(name);
+    // returns the location or the entity named by the symbol, or null
+    public GameEntity getEntity(int symbol) {
+        if (symbol < 0 || symbol >= this.entitiesBySymbol.size()) return null;
+        return this.entitiesBySymbol.get(symbol);
     }
 
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < this.vertices; i++) {
-            sb.append(locations.get(i).toString());
+        for (Location location : this.locations) {
+            sb.append(location.toString());
         }
-        for (Map.Entry<String, Set<String>> entry : this.adj.entrySet()) {
-            String from = entry.getKey();
-            for (String to : entry.getValue()) {
-                sb.append(from).append(" -> ").append(to).append(System.lineSeparator());
+        for (Location from : this.locations) {
+            for (Location to : this.getEdgesFrom(from)) {
+                sb.append(from.getName()).append(" -> ").append(to.getName()).append(System.lineSeparator());
             }
         }
         return sb.toString();
     }
 
-    // exclude subgraph nodes
-    private List<Node> getDirectNodes(Graph G) {
-        List<Node> nodes = G.getNodes(true);
-        Set<String> reference = G.getSubgraphs().stream().map(new Function<Graph, String>() {
-            @Override
-            public String apply(Graph subgraph) {
-                return subgraph.getId().getId();
-            }
-        }).collect(Collectors.toSet());
-        return nodes.stream().filter(new Predicate<Node>() {
-            @Override
-            public boolean test(Node n) {
-                return !reference.contains(n.getId().getId());
-            }
-        }).toList();
-    }
-
     private enum Types {LAYOUT, LOCATION, PLAYER, FURNITURE, CHARACTER, ARTEFACT, PATH}
 
     private static final Map<String, Types> entityTypes = Map.ofEntries(Map.entry("layout", Types.LAYOUT),
@@ -155,110 +212,127 @@ public class Document {
             Map.entry("furniture", Types.FURNITURE), Map.entry("characters", Types.CHARACTER),
             Map.entry("artefacts", Types.ARTEFACT), Map.entry("paths", Types.PATH));
 
-    private void parseLocations(List<Graph> locations) {
-        if (locations != null && !locations.isEmpty()) {
-            for (Graph location : locations) {
-                // some checks
-                Node locationDetails = this.getDirectNodes(location).get(0);
-                String locationName = locationDetails.getId().getId().toLowerCase();
-                if (this.hasEntity(locationName)) {
-                    throw new MyExceptions.DuplicateEntityException();
+    private static Types getType(String id) {
+        return id == null ? null : entityTypes.get(id.toLowerCase());
+    }
+
+    /**
+     * Builds the world from the statements of the entities file: the layout graph holds the locations subgraph, then
+     * the paths subgraph. Every cluster of the locations is a location, named by its first node, whose subgraphs
+     * hold its artefacts, furniture, characters or players. The items of a cluster are added with the location
+     * when the cluster closes, and the storeroom is created after the locations if there was none.
+     */
+    private final class LayoutHandler implements DotReader.Handler {
+        private int depth = 0; // of the current subgraph, the layout graph itself is 0
+        private int sections = 0; // subgraphs of the layout graph so far
+        private Types section; // LOCATION or PATH inside one of the first two subgraphs of the layout graph
+        private Location current; // the location of the cluster being read
+        private final List<MovableEntity> items = new ArrayList<>(); // of the cluster being read
+        private Types itemType; // of the item subgraph being read
+
+        @Override
+        public void graph(String id) {
+            if (getType(id) != Types.LAYOUT) throw new MyExceptions.InvalidParserException();
+        }
+
+        @Override
+        public void beginSubgraph(String id) {
+            this.depth++;
+            if (this.depth == 1) {
+                this.sections++;
+                this.section = null;
+                if (this.sections == 1) {
+                    if (getType(id) != Types.LOCATION) throw new MyExceptions.NotLocationException();
+                    this.section = Types.LOCATION;
+                } else if (this.sections == 2) {
+                    if (getType(id) != Types.PATH) throw new MyExceptions.NotPathException();
+                    this.section = Types.PATH;
                 }
-                this.checkBuiltInAction(locationName);
-                // create separate location object
-                Location current = new Location(locationName);
-                current.setAttributes(locationDetails.getAttributes());
-                // get items at the location
-                for (Graph subgraph : location.getSubgraphs()) {
-                    List<MovableEntity> items = this.getItems(subgraph, current);
-                    if (items == null) continue;
-                    for (MovableEntity item : items) {
-                        if (item != null) current.addItem(item);
-                    }
+            } else if (this.section == Types.LOCATION && this.depth == 2) {
+                this.current = null;
+                this.items.clear();
+            } else if (this.section == Types.LOCATION && this.depth == 3) {
+                this.itemType = getType(id);
+                if (this.itemType != Types.PLAYER && this.itemType != Types.FURNITURE && this.itemType != Types.CHARACTER
+                        && this.itemType != Types.ARTEFACT) {
+                    throw new MyExceptions.NoSuchTypeException(id);
                 }
-                this.addLocation(current);
             }
         }
-    }
 
-    private void parsePaths(List<Edge> edges) {
-        if (edges != null && !edges.isEmpty()) {
-            for (Edge edge : edges) {
-                this.addEdge(edge.getSource().getNode().getId().getId(), edge.getTarget().getNode().getId().getId());
+        @Override
+        public void endSubgraph() {
+            if (this.section == Types.LOCATION && this.depth == 3) {
+                this.itemType = null;
+            } else if (this.section == Types.LOCATION && this.depth == 2) {
+                if (this.current == null) throw new MyExceptions.InvalidParserException();
+                for (MovableEntity item : this.items) {
+                    item.setCurrent(this.current);
+                    this.current.addItem(item);
+                }
+                Document.this.addLocation(this.current);
+                this.current = null;
+                this.items.clear();
+            } else if (this.section == Types.LOCATION && this.depth == 1) {
+                // if storeroom is not specified, generate one
+                if (!Document.this.hasLocation("storeroom")) {
+                    Document.this.addLocation(new Location("storeroom"));
+                }
+                Document.this.storeroom = Document.this.getLocation("storeroom");
             }
+            this.depth--;
         }
-    }
 
-    private void setDocument(Graph G) throws MyExceptions {
-        if (G == null || entityTypes.get(G.getId().getId().toLowerCase()) != Types.LAYOUT) {
-            throw new MyExceptions.InvalidParserException();
-        }
-
-        // store locations
-        Graph locationGraph = G.getSubgraphs().get(0);
-        if (entityTypes.get(locationGraph.getId().getId().toLowerCase()) != Types.LOCATION) {
-            throw new MyExceptions.NotLocationException();
+        @Override
+        public void node(String id, Map<String, String> attributes) {
+            if (this.section != Types.LOCATION) return;
+            if (this.depth == 2 && this.current == null) {
+                String name = id.toLowerCase();
+                Document.this.checkName(name);
+                this.current = new Location(name);
+                this.current.setAttributes(attributes);
+            } else if (this.depth == 3) {
+                String name = id.toLowerCase();
+                Document.this.checkName(name);
+                this.items.add(Document.this.parseItem(this.itemType, name, attributes));
+            }
         }
-        List<Graph> locations = locationGraph.getSubgraphs(); // cluster001, cluster002, ...
-        this.parseLocations(locations);
 
-        // if storeroom is not specified, generate one
-        if (!this.hasLocation("storeroom")) {
-            this.addLocation(new Location("storeroom"));
+        @Override
+        public void edge(String from, String to) {
+            if (this.section == Types.PATH && this.depth == 1) Document.this.addEdge(from, to);
         }
 
-        // store paths
-        Graph pathGraph = G.getSubgraphs().get(1);
-        if (entityTypes.get(pathGraph.getId().getId().toLowerCase()) != Types.PATH) {
-            throw new MyExceptions.NotPathException();
+        // called once the whole file is read
+        private void finish() {
+            if (this.sections < 1) throw new MyExceptions.NotLocationException();
+            if (this.sections < 2) throw new MyExceptions.NotPathException();
         }
-        List<Edge> edges = pathGraph.getEdges();
-        this.parsePaths(edges);
     }
 
-    private void parseItem(Types type, Node node, String name, Location location, List<MovableEntity> items) throws MyExceptions {
-        Class<? extends MovableEntity> clazz = null;
-        if (type == Types.PLAYER) clazz = Player.class;
-        if (type == Types.FURNITURE) clazz = Furniture.class;
-        if (type == Types.CHARACTER) clazz = Character.class;
-        if (type == Types.ARTEFACT) clazz = Artefact.class;
-        if (clazz == null) throw new MyExceptions.NoSuchTypeException(type.toString());
-
-        try {
-            MovableEntity item = clazz.getConstructor(String.class).newInstance(name);
-            // insert player into players, insert other movable to all entities
-            if (type == Types.PLAYER) {
-                this.players.put(name, (Player) item);
-            } else {
-                this.allEntities.put(name, item);
-            }
-            // set item's attributes and initial location
-            item.setAttributes(node.getAttributes());
-            item.setCurrent(location);
-            items.add(item);
-        } catch (Exception e) {
-            throw new MyExceptions.NoConstructorException(type.toString());
+    private MovableEntity parseItem(Types type, String name, Map<String, String> attributes) throws MyExceptions {
+        MovableEntity item = switch (type) {
+            case PLAYER -> new Player(name);
+            case FURNITURE -> new Furniture(name);
+            case CHARACTER -> new Character(name);
+            case ARTEFACT -> new Artefact(name);
+            default -> throw new MyExceptions.NoSuchTypeException(type.toString());
+        };
+        // insert player into players, insert other movable to all entities
+        if (type == Types.PLAYER) {
+            item.setSymbol(this.symbols.intern(name));
+            this.players.put(name, (Player) item);
+        } else {
+            this.register(item);
         }
+        item.setAttributes(attributes);
+        return item;
     }
 
-    private List<MovableEntity> getItems(Graph G, Location location) throws MyExceptions {
-        if (G == null) return null;
-        Types type = entityTypes.get(G.getId().getId().toLowerCase());
-        if (type != Types.PLAYER && type != Types.FURNITURE && type != Types.CHARACTER && type != Types.ARTEFACT) {
-            throw new MyExceptions.NoSuchTypeException(type.toString());
-        }
-
-        List<MovableEntity> items = new LinkedList<>();
-        for (Node node : this.getDirectNodes(G)) {
-            // check item not duplicate
-            String name = node.getId().getId().toLowerCase();
-            if (this.hasEntity(name)) {
-                throw new MyExceptions.DuplicateEntityException();
-            }
-            this.checkBuiltInAction(name);
-            this.parseItem(type, node, name, location, items);
-        }
-        return items;
+    // check item not duplicate
+    private void checkName(String name) throws MyExceptions {
+        if (this.hasEntity(name)) throw new MyExceptions.DuplicateEntityException();
+        this.checkBuiltInAction(name);
     }
 
     private void checkBuiltInAction(String name) throws MyExceptions {
@@ -0,0 +1,287 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming reader for the subset of Graphviz DOT used by entities files, without building a graph in memory.
+ * <p>
+ * The statements of the first graph are reported to a {@link Handler} as they are read: subgraphs as they open and
+ * close, nodes with their own attributes, and every edge of an edge chain. Default attribute statements such as
+ * {@code node [shape = "none"]} and graph attributes such as {@code splines = ortho} are skipped, as are edge
+ * attributes. Quoted IDs lose their quotes but keep their escapes as they are written, like the Graphviz parser did.
+ */
+final class DotReader {
+
+    interface Handler {
+        void graph(String id);
+
+        // the id is null for an anonymous subgraph
+        void beginSubgraph(String id);
+
+        void endSubgraph();
+
+        void node(String id, Map<String, String> attributes);
+
+        void edge(String from, String to);
+    }
+
+    private static final int END = -1;
+    private static final int ID = -2;
+    private static final int EDGE = -3;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position = 0;
+    private int limit = 0;
+    private int line = 1;
+
+    // the current token: a punctuation character, or one of the kinds above with the text of an ID
+    private int token;
+    private boolean quoted;
+    private final StringBuilder text = new StringBuilder();
+
+    DotReader(Reader in) {
+        this.in = in;
+    }
+
+    void read(Handler handler) throws IOException {
+        this.next();
+        if (this.isKeyword("strict")) this.next();
+        if (!this.isKeyword("digraph") && !this.isKeyword("graph")) throw this.error("graph expected");
+        this.next();
+        String id = null;
+        if (this.token == ID) {
+            id = this.text.toString();
+            this.next();
+        }
+        handler.graph(id);
+        this.expect('{');
+        this.statements(handler);
+        this.expect('}');
+    }
+
+    private void statements(Handler handler) throws IOException {
+        while (this.token != '}') {
+            if (this.token == END) throw this.error("'}' expected");
+            this.statement(handler);
+            if (this.token == ';' || this.token == ',') this.next();
+        }
+    }
+
+    private void statement(Handler handler) throws IOException {
+        if (this.token == '{' || this.isKeyword("subgraph")) {
+            String id = null;
+            if (this.token != '{') {
+                this.next();
+                if (this.token == ID) {
+                    id = this.text.toString();
+                    this.next();
+                }
+            }
+            handler.beginSubgraph(id);
+            this.expect('{');
+            this.statements(handler);
+            this.expect('}');
+            handler.endSubgraph();
+            return;
+        }
+        if (this.token != ID) throw this.error("statement expected");
+        if (this.isKeyword("node") || this.isKeyword("edge") || this.isKeyword("graph")) {
+            this.next();
+            this.attributes(null);
+            return;
+        }
+        String id = this.text.toString();
+        this.next();
+        if (this.token == '=') {
+            this.next();
+            this.id();
+            return;
+        }
+        this.port();
+        if (this.token == EDGE) {
+            String from = id;
+            while (this.token == EDGE) {
+                this.next();
+                String to = this.id();
+                this.port();
+                handler.edge(from, to);
+                from = to;
+            }
+            this.attributes(null);
+            return;
+        }
+        Map<String, String> attributes = new HashMap<>();
+        this.attributes(attributes);
+        handler.node(id, attributes);
+    }
+
+    // puts the attributes of the following lists into the map, or skips them if it is null
+    private void attributes(Map<String, String> attributes) throws IOException {
+        while (this.token == '[') {
+            this.next();
+            while (this.token != ']') {
+                String key = this.id();
+                String value = "";
+                if (this.token == '=') {
+                    this.next();
+                    value = this.id();
+                }
+                if (attributes != null) attributes.put(key, value);
+                if (this.token == ',' || this.token == ';') this.next();
+            }
+            this.next();
+        }
+    }
+
+    // ports only matter for drawing
+    private void port() throws IOException {
+        while (this.token == ':') {
+            this.next();
+            this.id();
+        }
+    }
+
+    private String id() throws IOException {
+        if (this.token != ID) throw this.error("ID expected");
+        String id = this.text.toString();
+        this.next();
+        return id;
+    }
+
+    private void expect(char c) throws IOException {
+        if (this.token != c) throw this.error(new StringBuilder().append('\'').append(c).append("' expected").toString());
+        this.next();
+    }
+
+    // keywords are case-insensitive and never quoted
+    private boolean isKeyword(String keyword) {
+        if (this.token != ID || this.quoted || this.text.length() != keyword.length()) return false;
+        for (int i = 0; i < keyword.length(); i++) {
+            if (java.lang.Character.toLowerCase(this.text.charAt(i)) != keyword.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private MyExceptions error(String message) {
+        return new MyExceptions(new StringBuilder().append("Invalid entities file at line ").append(this.line)
+                .append(": ").append(message).toString());
+    }
+
+    private int peek() throws IOException {
+        if (this.position == this.limit) {
+            this.limit = this.in.read(this.buffer, 0, this.buffer.length);
+            this.position = 0;
+            if (this.limit <= 0) {
+                this.limit = 0;
+                return END;
+            }
+        }
+        return this.buffer[this.position];
+    }
+
+    private int read() throws IOException {
+        int c = this.peek();
+        if (c == END) return END;
+        this.position++;
+        if (c == '\n') this.line++;
+        return c;
+    }
+
+    private void next() throws IOException {
+        this.skipBlank();
+        this.quoted = false;
+        int c = this.read();
+        switch (c) {
+            case END, '{', '}', '[', ']', '=', ';', ',', ':' -> this.token = c;
+            case '"' -> this.quotedId();
+            case '<' -> this.htmlId();
+            case '-' -> {
+                if (this.peek() == '>' || this.peek() == '-') {
+                    this.read();
+                    this.token = EDGE;
+                } else {
+                    this.text.setLength(0);
+                    this.text.append('-');
+                    this.plainId();
+                }
+            }
+            default -> {
+                if (!isIdChar(c)) throw this.error(new StringBuilder().append("unexpected '").append((char) c).append('\'').toString());
+                this.text.setLength(0);
+                this.text.append((char) c);
+                this.plainId();
+            }
+        }
+    }
+
+    private void skipBlank() throws IOException {
+        while (true) {
+            int c = this.peek();
+            if (c == '#') {
+                this.skipLine();
+            } else if (c == '/') {
+                this.read();
+                int after = this.peek();
+                if (after == '/') {
+                    this.skipLine();
+                } else if (after == '*') {
+                    this.read();
+                    int previous = 0;
+                    while ((c = this.read()) != END && !(previous == '*' && c == '/')) previous = c;
+                } else {
+                    throw this.error("unexpected '/'");
+                }
+            } else if (c != END && java.lang.Character.isWhitespace(c)) {
+                this.read();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void skipLine() throws IOException {
+        int c = this.read();
+        while (c != END && c != '\n') c = this.read();
+    }
+
+    private void plainId() throws IOException {
+        while (isIdChar(this.peek())) this.text.append((char) this.read());
+        this.token = ID;
+    }
+
+    private void quotedId() throws IOException {
+        this.text.setLength(0);
+        int c = this.read();
+        while (c != '"') {
+            if (c == END) throw this.error("unterminated string");
+            this.text.append((char) c);
+            // an escaped character is kept with its backslash
+            if (c == '\\' && this.peek() != END) this.text.append((char) this.read());
+            c = this.read();
+        }
+        this.token = ID;
+        this.quoted = true;
+    }
+
+    private void htmlId() throws IOException {
+        this.text.setLength(0);
+        int depth = 1;
+        while (true) {
+            int c = this.read();
+            if (c == END) throw this.error("unterminated HTML string");
+            if (c == '<') depth++;
+            if (c == '>' && --depth == 0) break;
+            this.text.append((char) c);
+        }
+        this.token = ID;
+        this.quoted = true;
+    }
+
+    private static boolean isIdChar(int c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || c == '.' || c >= 0x80;
+    }
+}
@@ -2,6 +2,6 @@ package edu.uob;
 
 public class DropAction extends Action {
     public DropAction() {
-        this.identifier = -3;
+        super(-3);
     }
 }
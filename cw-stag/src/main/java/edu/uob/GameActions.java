@@ -1,67 +1,120 @@
 package edu.uob;
 
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.*;
-import java.util.function.Supplier;
 
 public class GameActions {
-    public static final Map<String, Supplier<Action>> builtInActions = Map.ofEntries(
-            Map.entry("inventory", InvAction::new), Map.entry("inv", InvAction::new),
-            Map.entry("get", GetAction::new), Map.entry("drop", DropAction::new),
-            Map.entry("goto", GotoAction::new), Map.entry("look", LookAction::new),
-            Map.entry("health", HealthAction::new)
+    // built-in actions hold no per-command state, so one shared instance serves every command
+    private static final Action INVENTORY = new InvAction();
+
+    public static final Map<String, Action> builtInActions = Map.ofEntries(
+            Map.entry("inventory", INVENTORY), Map.entry("inv", INVENTORY),
+            Map.entry("get", new GetAction()), Map.entry("drop", new DropAction()),
+            Map.entry("goto", new GotoAction()), Map.entry("look", new LookAction()),
+            Map.entry("health", new HealthAction())
     );
 
-    private final List<Action> customizedActions = new LinkedList<>();
+    private final List<Action> customizedActions = new ArrayList<>(); // index: identifier of the action
+
+    private final TriggerAutomaton triggers = new TriggerAutomaton(); // all trigger phrases, built-in keywords included
+
+    private final SymbolTable symbols;
+    private final IntMap<Action> builtInSymbols = new IntMap<>(); // key: symbol of a built-in keyword
+
+    public GameActions(File actionsFile, SymbolTable symbols) throws MyExceptions {
+        this.symbols = symbols;
+        this.addDefinitions(GameActions.readDefinitions(actionsFile));
+    }
+
+    private GameActions(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
 
-    private final Map<String, List<Action>> lookupActions = new HashMap<>(); // key: first word of trigger phrase, value: corresponding actions
+    /**
+     * An action as written in the actions file, before any of its names is interned. Files are read into
+     * definitions without a symbol table, so they can be read on any thread.
+     */
+    static final class Definition {
+        private final List<List<String>> triggers;
+        private final Set<String> subjects;
+        private final List<String> consumed;
+        private final List<String> produced;
+        private final String narration;
+
+        Definition(List<List<String>> triggers, Set<String> subjects, List<String> consumed, List<String> produced, String narration) {
+            this.triggers = List.copyOf(triggers);
+            this.subjects = Set.copyOf(subjects);
+            this.consumed = List.copyOf(consumed);
+            this.produced = List.copyOf(produced);
+            this.narration = narration;
+        }
+    }
 
-    public GameActions(File actionsFile) throws MyExceptions {
-        try {
-            NodeList actions = DocumentBuilderFactory.
-                    newInstance().
-                    newDocumentBuilder().
-                    parse(actionsFile).
-                    getDocumentElement().
-                    getChildNodes();
-            this.setGameActions(actions);
+    // reads the actions file, the definitions become actions once interned by fromDefinitions
+    static List<Definition> readDefinitions(File actionsFile) throws MyExceptions {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(actionsFile))) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                return GameActions.readDefinitions(reader);
+            } finally {
+                reader.close();
+            }
         } catch (Exception e) {
             throw new MyExceptions(e.getMessage());
         }
     }
 
-    public boolean mightBeAction(String firstWord) {
-        if (GameActions.builtInActions.containsKey(firstWord)) return true;
-
-        if (this.lookupActions.containsKey(firstWord)) return true;
-
-        return false;
+    // interns the definitions in file order, an action's entities before its triggers
+    static GameActions fromDefinitions(List<Definition> definitions, SymbolTable symbols) {
+        GameActions actions = new GameActions(symbols);
+        actions.addDefinitions(definitions);
+        return actions;
     }
 
-    public List<Action> possibleActions(List<String> words, Set<String> entities) {
-        String firstWord = words.get(0);
-        List<Action> actions = new LinkedList<>();
+    // for actions which are already built, such as ones restored from a snapshot, in the order of their identifiers
+    GameActions(List<Action> actions, SymbolTable symbols) {
+        this.symbols = symbols;
+        for (Action action : actions) this.addCustomizedAction(action);
+        this.addBuiltInActions();
+    }
 
-        // built-in actions
-        if (GameActions.builtInActions.containsKey(firstWord)) {
-            actions.add(GameActions.builtInActions.get(firstWord).get());
-        }
-        // custom actions
-        else if (this.lookupActions.containsKey(firstWord)) {
-            if (!entities.isEmpty()) { // Partial commands: at least one subject
-                for (Action action : this.lookupActions.get(firstWord)) {
-                    if (action.isThisAction(words)) {
-                        actions.add(action);
-                    }
+    // puts every action triggered somewhere in the first count words into possibleActions, keyed by identifier
+    public void matchActions(int[] words, int count, IntMap<GameEntity> entities, IntMap<Action> possibleActions) {
+        this.triggers.match(words, count, new TriggerAutomaton.MatchConsumer() {
+            @Override
+            public void accept(Action action, int start) {
+                // built-in actions
+                if (action.getIdentifier() < 0) {
+                    possibleActions.put(action.getIdentifier(), action);
+                    return;
                 }
+                // custom actions: Partial commands need at least one subject, and a built-in keyword takes precedence
+                if (entities.isEmpty() || GameActions.this.builtInSymbols.containsKey(words[start])) return;
+                possibleActions.put(action.getIdentifier(), action);
             }
+        });
+    }
+
+    // the custom action with that identifier or the built-in action with that negative identifier, or null
+    Action getAction(int identifier) {
+        if (identifier >= 0) return identifier < this.customizedActions.size() ? this.customizedActions.get(identifier) : null;
+        for (Action action : GameActions.builtInActions.values()) {
+            if (action.getIdentifier() == identifier) return action;
         }
+        return null;
+    }
 
-        return actions;
+    List<Action> listCustomizedActions() {
+        return Collections.unmodifiableList(this.customizedActions);
     }
 
     public String toString() {
@@ -72,53 +125,78 @@ public class GameActions {
         return sb.toString();
     }
 
-    private void setGameActions(NodeList actions) {
-        for (int i = 1; i < actions.getLength(); i += 2) {
-            Element action = (Element) actions.item(i);
-            Action actionObject = new Action();
-
-            this.getTriggerElements(action, actionObject);
-            this.getEntityElements(action, actionObject, "subjects");
-            this.getEntityElements(action, actionObject, "consumed");
-            this.getEntityElements(action, actionObject, "produced");
-            actionObject.setNarration(action.getElementsByTagName("narration").item(0).getTextContent());
-
-            this.customizedActions.add(actionObject);
-            for (String firstWord : actionObject.getFirstWords()) {
-                this.insertIntoTable(firstWord, actionObject);
+    // one pass over the file, only the action being read is held besides the definitions already read
+    private static List<Definition> readDefinitions(XMLStreamReader reader) throws XMLStreamException {
+        List<Definition> definitions = new ArrayList<>();
+        List<List<String>> triggers = new ArrayList<>();
+        Set<String> subjects = new HashSet<>();
+        List<String> consumed = new ArrayList<>();
+        List<String> produced = new ArrayList<>();
+        String section = null; // the element the next entities belong to
+        String narration = null;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT && "action".equals(reader.getLocalName())) {
+                if (triggers.isEmpty()) throw new XMLStreamException("Action without a trigger", reader.getLocation());
+                if (narration == null) throw new XMLStreamException("Action without a narration", reader.getLocation());
+                definitions.add(new Definition(triggers, subjects, consumed, produced, narration));
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) continue;
+            switch (reader.getLocalName()) {
+                case "action" -> {
+                    triggers.clear();
+                    subjects.clear();
+                    consumed.clear();
+                    produced.clear();
+                    section = null;
+                    narration = null;
+                }
+                case "subjects", "consumed", "produced" -> section = reader.getLocalName();
+                case "keyphrase" -> triggers.add(Arrays.asList(reader.getElementText().split("\\s+")));
+                case "entity" -> {
+                    String entity = reader.getElementText();
+                    if ("subjects".equals(section)) subjects.add(entity);
+                    else if ("consumed".equals(section)) consumed.add(entity);
+                    else if ("produced".equals(section)) produced.add(entity);
+                }
+                case "narration" -> narration = reader.getElementText();
+                default -> {
+                }
             }
         }
-        // check duplicate action triggers
-        for (int i = 0; i < this.customizedActions.size(); i++) {
-            this.customizedActions.get(i).setIdentifier(i);
-        }
+        return definitions;
     }
 
-    private void getTriggerElements(Element action, Action actionObject) {
-        NodeList triggers = ((Element) action.getElementsByTagName("triggers").item(0)).getElementsByTagName("keyphrase");
-        for (int j = 0; j < triggers.getLength(); j++) {
-            String triggerPhrase = triggers.item(j).getTextContent();
-            List<String> phrase = Arrays.stream(triggerPhrase.split("\\s+")).toList();
-            actionObject.putTrigger(phrase);
+    private void addDefinitions(List<Definition> definitions) {
+        for (Definition definition : definitions) {
+            // the identifier is the index of the action, to filter out duplicate action triggers
+            this.addCustomizedAction(new Action(this.customizedActions.size(), definition.triggers, definition.subjects,
+                    definition.consumed, definition.produced, definition.narration, this.symbols));
         }
+        this.addBuiltInActions();
     }
 
-    private void getEntityElements(Element action, Action actionObject, String tagName) {
-        NodeList entities = ((Element) action.getElementsByTagName(tagName).item(0)).getElementsByTagName("entity");
-        for (int j = 0; j < entities.getLength(); j++) {
-            String item = entities.item(j).getTextContent();
-            if ("subjects".equals(tagName)) actionObject.addSubject(item);
-            else if ("consumed".equals(tagName)) actionObject.addConsumed(item);
-            else if ("produced".equals(tagName)) actionObject.addProduced(item);
+    private void addCustomizedAction(Action action) {
+        this.customizedActions.add(action);
+        for (List<String> phrase : action.getTriggerPhrases()) {
+            this.triggers.add(this.internPhrase(phrase), action);
         }
     }
 
-    private void insertIntoTable(String firstWord, Action actionObject) {
-        List<Action> list = new LinkedList<>();
-        if (this.lookupActions.containsKey(firstWord)) {
-            list = this.lookupActions.get(firstWord);
+    // built-in keywords are added after the custom actions, then the automaton is compiled
+    private void addBuiltInActions() {
+        for (Map.Entry<String, Action> entry : GameActions.builtInActions.entrySet()) {
+            int symbol = this.symbols.intern(entry.getKey());
+            this.builtInSymbols.put(symbol, entry.getValue());
+            this.triggers.add(new int[]{symbol}, entry.getValue());
         }
-        list.add(actionObject);
-        this.lookupActions.put(firstWord, list);
+        this.triggers.build();
+    }
+
+    private int[] internPhrase(List<String> phrase) {
+        int[] words = new int[phrase.size()];
+        for (int i = 0; i < words.length; i++) words[i] = this.symbols.intern(phrase.get(i));
+        return words;
     }
-}
\ No newline at end of file
+}
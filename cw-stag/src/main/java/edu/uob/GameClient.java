@@ -11,6 +11,9 @@ import java.net.Socket;
 * This is the sample client for you to connect to your game server.
 *
 * <p>Input are taken from stdin and output goes to stdout.
+*
+* <p>Passing {@code session} as the second argument keeps one connection open for all commands,
+* which requires the server to be started in session mode.
 */
 public final class GameClient {
 
@@ -18,9 +21,40 @@ public final class GameClient {
 
     public static void main(String[] args) throws IOException {
         String username = args[0];
+        if (args.length > 1 && "session".equals(args[1])) {
+            GameClient.runSession(username);
+            return;
+        }
         while (!Thread.interrupted()) GameClient.handleNextCommand(username);
     }
 
+    private static void runSession(String username) throws IOException {
+        BufferedReader commandLine = new BufferedReader(new InputStreamReader(System.in));
+        try (var socket = new Socket("localhost", 8888);
+        var socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        var socketWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            while (!Thread.interrupted()) {
+                System.out.print(new StringBuilder().append(username).append(":> ").toString());
+                String command = commandLine.readLine();
+                if (command == null) return;
+                socketWriter.write(new StringBuilder().append(username).append(": ").append(command).append("\n").toString());
+                socketWriter.flush();
+                GameClient.readReply(socketReader);
+            }
+        }
+    }
+
+    private static void readReply(BufferedReader socketReader) throws IOException {
+        String incomingMessage = socketReader.readLine();
+        if (incomingMessage == null) {
+            throw new IOException("Server disconnected (end-of-stream)");
+        }
+        while (incomingMessage != null && !incomingMessage.contains(new StringBuilder().append(END_OF_TRANSMISSION).toString())) {
+            System.out.println(incomingMessage);
+            incomingMessage = socketReader.readLine();
+        }
+    }
+
     private static void handleNextCommand(String username) throws IOException {
         System.out.print(new StringBuilder().append(username).append(":> ").toString());
         BufferedReader commandLine = new BufferedReader(new InputStreamReader(System.in));
@@ -30,14 +64,7 @@ public final class GameClient {
         var socketWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
             socketWriter.write(new StringBuilder().append(username).append(": ").append(command).append("\n").toString());
             socketWriter.flush();
-            String incomingMessage = socketReader.readLine();
-            if (incomingMessage == null) {
-                throw new IOException("Server disconnected (end-of-stream)");
-            }
-            while (incomingMessage != null && !incomingMessage.contains(new StringBuilder().append(END_OF_TRANSMISSION).toString())) {
-                System.out.println(incomingMessage);
-                incomingMessage = socketReader.readLine();
-            }
+            GameClient.readReply(socketReader);
         }
     }
 }
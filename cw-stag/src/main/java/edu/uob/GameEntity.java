@@ -5,6 +5,7 @@ import java.util.Map;
 
 public abstract class GameEntity {
     private String name;
+    private int symbol = SymbolTable.NO_SYMBOL;
     protected Map<String, String> attributes = new HashMap<>();
 
     public GameEntity(String name) {
@@ -15,6 +16,15 @@ public abstract class GameEntity {
         return name;
     }
 
+    // the interned symbol of the name, assigned when the entity is loaded
+    public int getSymbol() {
+        return this.symbol;
+    }
+
+    public void setSymbol(int symbol) {
+        this.symbol = symbol;
+    }
+
     public String getDescription() {
         return this.attributes.get("description");
     }
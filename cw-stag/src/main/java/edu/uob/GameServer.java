@@ -1,7 +1,9 @@
 package edu.uob;
 
+import javax.management.JMException;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -9,18 +11,67 @@ import java.io.OutputStreamWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public final class GameServer {
 
     private static final char END_OF_TRANSMISSION = 4;
 
+    private static final int DEFAULT_POOL_SIZE = 256;
+
+    // a concurrent client which sends no command in this time gives its pool thread back
+    private static final int READ_TIMEOUT_MILLIS = 10_000;
+
     private Controller controller = null;
 
+    // created when the first socket server starts and stopped when the last one returns, read on every command
+    // without locking
+    private volatile CommandDispatcher dispatcher = null;
+    private int listeners = 0;
+
+    // journaled servers snapshot into this file when they compact the journal
+    private File snapshotFile = null;
+
+    private static final long DEFAULT_COMPACT_EVERY = 100_000;
+
+    // reloads run one at a time, so the entities do not change while new actions are compiled against them
+    private final Object reloadLock = new Object();
+
+    // set by the watcher when the last change of the actions file could not be applied, as it may need new entities
+    private volatile boolean actionsStale = false;
+
     public static void main(String[] args) throws IOException {
         File entitiesFile = Paths.get(new StringBuilder().append("config").append(File.separator).append("basic-entities.dot").toString()).toAbsolutePath().toFile();
         File actionsFile = Paths.get(new StringBuilder().append("config").append(File.separator).append("basic-actions.xml").toString()).toAbsolutePath().toFile();
-        GameServer server = new GameServer(entitiesFile, actionsFile);
-        server.blockingListenOn(8888);
+        // with -Dstag.snapshot=file the world is restored from that file if it exists and saved to it on shutdown,
+        // with -Dstag.journal=file as well every applied command is journaled and replayed on the next start
+        String snapshot = System.getProperty("stag.snapshot");
+        String journal = System.getProperty("stag.journal");
+        GameServer server;
+        if (journal != null) {
+            File snapshotFile = new File(snapshot != null ? snapshot : new StringBuilder().append(journal).append(".snapshot").toString());
+            server = GameServer.recover(entitiesFile, actionsFile, snapshotFile, new File(journal));
+            server.saveSnapshotOnShutdown(snapshotFile);
+        } else if (snapshot != null) {
+            server = new File(snapshot).isFile() ? GameServer.fromSnapshot(new File(snapshot)) : new GameServer(entitiesFile, actionsFile);
+            server.saveSnapshotOnShutdown(new File(snapshot));
+        } else {
+            server = new GameServer(entitiesFile, actionsFile);
+        }
+        server.registerMetrics();
+        // with -Dstag.reload=true edits of the game files are applied without a restart
+        if (Boolean.getBoolean("stag.reload")) server.watchConfig(entitiesFile, actionsFile);
+        if (args.length > 0 && "concurrent".equals(args[0])) {
+            server.concurrentListenOn(8888);
+        } else if (args.length > 0 && "session".equals(args[0])) {
+            server.sessionListenOn(8888);
+        } else if (args.length > 0 && "nio".equals(args[0])) {
+            server.nonBlockingListenOn(8888);
+        } else {
+            server.blockingListenOn(8888);
+        }
     }
 
     /**
@@ -38,6 +89,178 @@ public final class GameServer {
         }
     }
 
+    private GameServer(Controller controller) {
+        this.controller = controller;
+    }
+
+    /**
+    * Restores a server from a snapshot written by {@link #saveSnapshot(File)}, without parsing the game files.
+    *
+    * @param snapshotFile The snapshot file.
+    * @throws IOException If the file cannot be read.
+    */
+    public static GameServer fromSnapshot(File snapshotFile) throws IOException {
+        return new GameServer(WorldSnapshot.read(snapshotFile.toPath()));
+    }
+
+    /**
+    * Restores the last snapshot, or parses the game files if there is none yet, replays the journal over it,
+    * and from then on journals every command which changes the world.
+    *
+    * @param snapshotFile The snapshot the journal is compacted into.
+    * @param journalFile The journal, created if it does not exist.
+    * @throws IOException If the snapshot or the journal cannot be read or written.
+    */
+    public static GameServer recover(File entitiesFile, File actionsFile, File snapshotFile, File journalFile) throws IOException {
+        GameServer server = snapshotFile.isFile() ? GameServer.fromSnapshot(snapshotFile) : new GameServer(entitiesFile, actionsFile);
+        if (server.controller == null) return server;
+        CommandJournal journal = CommandJournal.open(journalFile.toPath(), Long.getLong("stag.journal.compact", DEFAULT_COMPACT_EVERY));
+        journal.replay(server.controller);
+        server.controller.setJournal(journal);
+        server.snapshotFile = snapshotFile;
+        // start from a snapshot holding the whole journal, so that replays never depend on parsing the files again
+        journal.compact(server.controller, snapshotFile.toPath());
+        return server;
+    }
+
+    /**
+    * Saves the world and every player to a snapshot file, between two commands.
+    * A journaled server also compacts its journal when saving to its own snapshot file.
+    *
+    * @param snapshotFile The snapshot file, replaced atomically.
+    * @throws IOException If the file cannot be written.
+    */
+    public void saveSnapshot(File snapshotFile) throws IOException {
+        if (this.controller == null) return;
+        synchronized (this.controller) {
+            CommandJournal journal = this.controller.getJournal();
+            if (journal != null && snapshotFile.equals(this.snapshotFile)) {
+                journal.compact(this.controller, snapshotFile.toPath());
+            } else {
+                WorldSnapshot.write(this.controller, snapshotFile.toPath());
+            }
+        }
+    }
+
+    // group commit of the commands journaled since the last call, called by the world thread after every batch
+    void commitJournal() {
+        if (this.controller == null || this.controller.getJournal() == null) return;
+        synchronized (this.controller) {
+            CommandJournal journal = this.controller.getJournal();
+            try {
+                if (journal.shouldCompact()) {
+                    journal.compact(this.controller, this.snapshotFile.toPath());
+                } else {
+                    journal.commit();
+                }
+            } catch (IOException e) {
+                ServerLog.LOG.warn("Journal not committed", e.getMessage());
+            }
+        }
+    }
+
+    /**
+    * Reads the actions file again and replaces every custom action, without stopping the server.
+    * The actions are read, validated and compiled on the calling thread, only swapping them in waits for the commands.
+    *
+    * @param actionsFile The game configuration file containing all game actions to use in your game
+    * @return Whether the actions were replaced, invalid actions leave the previous ones in place.
+    */
+    public boolean reloadActions(File actionsFile) {
+        if (this.controller == null) return false;
+        try {
+            List<GameActions.Definition> definitions = GameActions.readDefinitions(actionsFile);
+            synchronized (this.reloadLock) {
+                Controller.ActionReload reload = this.controller.prepareActions(definitions);
+                synchronized (this.controller) {
+                    this.controller.replaceActions(reload);
+                    this.compactAfterReload();
+                }
+            }
+        } catch (MyExceptions e) {
+            ServerLog.LOG.warn("Actions not reloaded", e.getMessage());
+            return false;
+        }
+        ServerLog.LOG.info("Actions reloaded", actionsFile.getName());
+        return true;
+    }
+
+    /**
+    * Reads the entities file again and adds the locations, items and paths the world does not have yet, without
+    * stopping the server. The file is parsed into a separate world on the calling thread, only the additions are
+    * applied between two commands.
+    *
+    * @param entitiesFile The game configuration file containing all game entities to use in your game
+    * @return Whether the file could be read.
+    */
+    public boolean reloadEntities(File entitiesFile) {
+        if (this.controller == null) return false;
+        int added;
+        try {
+            Document loaded = new Document(entitiesFile, new SymbolTable());
+            synchronized (this.reloadLock) {
+                synchronized (this.controller) {
+                    added = this.controller.addEntities(loaded);
+                    if (added > 0) this.compactAfterReload();
+                }
+            }
+        } catch (MyExceptions e) {
+            ServerLog.LOG.warn("Entities not reloaded", e.getMessage());
+            return false;
+        }
+        ServerLog.LOG.info("Entities reloaded, additions", added);
+        return true;
+    }
+
+    /**
+    * Reloads the game files whenever they change, on a daemon thread, until the returned watcher is closed.
+    *
+    * @throws IOException If the directories of the files cannot be watched.
+    */
+    public Closeable watchConfig(File entitiesFile, File actionsFile) throws IOException {
+        ConfigWatcher watcher = new ConfigWatcher();
+        // new entities first, the new actions may use them
+        watcher.watch(entitiesFile, new Runnable() {
+            @Override
+            public void run() {
+                if (GameServer.this.reloadEntities(entitiesFile) && GameServer.this.actionsStale) {
+                    GameServer.this.actionsStale = !GameServer.this.reloadActions(actionsFile);
+                }
+            }
+        });
+        watcher.watch(actionsFile, new Runnable() {
+            @Override
+            public void run() {
+                GameServer.this.actionsStale = !GameServer.this.reloadActions(actionsFile);
+            }
+        });
+        watcher.start();
+        return watcher;
+    }
+
+    // journal records name actions by identifier and assume the entities of the world, so they must not span a reload
+    private void compactAfterReload() {
+        if (this.controller.getJournal() == null) return;
+        try {
+            this.controller.getJournal().compact(this.controller, this.snapshotFile.toPath());
+        } catch (IOException e) {
+            ServerLog.LOG.warn("Journal not compacted after reload", e.getMessage());
+        }
+    }
+
+    private void saveSnapshotOnShutdown(File snapshotFile) {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    GameServer.this.saveSnapshot(snapshotFile);
+                } catch (IOException e) {
+                    System.err.println(new StringBuilder().append("Snapshot not saved: ").append(e.getMessage()));
+                }
+            }
+        }, "stag-snapshot"));
+    }
+
     /**
     * Do not change the following method signature or we won't be able to mark your submission
     * This method handles all incoming game commands and carries out the corresponding actions.</p>
@@ -46,10 +269,13 @@ public final class GameServer {
     */
     public String handleCommand(String command) {
         if(this.controller == null) return "[ERROR]: Invalid building files so server has no valid controlling unit!";
-        try {
-            return this.controller.handleCommand(command);
-        } catch (MyExceptions e) {
-            return e.getMessage();
+        // the world state is not thread safe, direct callers are serialized against the world thread of the socket servers
+        synchronized (this.controller) {
+            try {
+                return this.controller.handleCommand(command);
+            } catch (MyExceptions e) {
+                return e.getMessage();
+            }
         }
     }
 
@@ -61,15 +287,18 @@ public final class GameServer {
     * @throws IOException If any IO related operation fails.
     */
     public void blockingListenOn(int portNumber) throws IOException {
+        this.startListening();
         try (ServerSocket s = new ServerSocket(portNumber)) {
-            System.out.println(new StringBuilder().append("Server listening on port ").append(portNumber));
+            ServerLog.LOG.info("Server listening on port", portNumber);
             while (!Thread.interrupted()) {
                 try {
                     this.blockingHandleConnection(s);
                 } catch (IOException e) {
-                    System.out.println("Connection closed");
+                    ServerLog.LOG.sampled(ServerLog.Level.INFO, "Connection closed", null);
                 }
             }
+        } finally {
+            this.stopListening();
         }
     }
 
@@ -81,17 +310,127 @@ public final class GameServer {
     * @throws IOException If any IO related operation fails.
     */
     private void blockingHandleConnection(ServerSocket serverSocket) throws IOException {
-        try (Socket s = serverSocket.accept();
+        this.handleConnection(serverSocket.accept(), false);
+    }
+
+    /**
+    * Starts a socket server which accepts connections on one thread and serves each of them on a pooled thread,
+    * so that a slow client does not block the other players.
+    *
+    * @param portNumber The port to listen on.
+    * @throws IOException If any IO related operation fails.
+    */
+    public void concurrentListenOn(int portNumber) throws IOException {
+        this.concurrentListenOn(portNumber, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+    * Starts a socket server which accepts connections on one thread and serves each of them on a pooled thread.
+    *
+    * @param portNumber The port to listen on.
+    * @param poolSize The maximum number of connections served at the same time.
+    * @throws IOException If any IO related operation fails.
+    */
+    public void concurrentListenOn(int portNumber, int poolSize) throws IOException {
+        this.pooledListenOn(portNumber, Executors.newFixedThreadPool(poolSize), false);
+    }
+
+    /**
+    * Starts a socket server in session mode: a connection stays open and carries many newline-delimited commands,
+    * each reply being terminated by the end of transmission marker, so that clients can pipeline their commands.
+    *
+    * @param portNumber The port to listen on.
+    * @throws IOException If any IO related operation fails.
+    */
+    public void sessionListenOn(int portNumber) throws IOException {
+        // a session holds its thread until the client disconnects, so every session gets a thread of its own
+        this.pooledListenOn(portNumber, Executors.newCachedThreadPool(), true);
+    }
+
+    /**
+    * Starts a non-blocking socket server in session mode, where a single selector thread serves every connection.
+    *
+    * @param portNumber The port to listen on.
+    * @throws IOException If any IO related operation fails.
+    */
+    public void nonBlockingListenOn(int portNumber) throws IOException {
+        this.startListening();
+        try {
+            new SelectorListener(this).listenOn(portNumber);
+        } finally {
+            this.stopListening();
+        }
+    }
+
+    /**
+    * Registers the command metrics of the controller as a JMX MBean, enabled with -Dstag.metrics=true or through JMX.
+    */
+    public void registerMetrics() {
+        if (this.controller == null) return;
+        try {
+            this.controller.getMetrics().register();
+        } catch (JMException e) {
+            ServerLog.LOG.warn("Metrics not registered", e.getMessage());
+        }
+    }
+
+    // socket servers hand their commands to a single world thread
+    CommandDispatcher getDispatcher() {
+        return this.dispatcher;
+    }
+
+    private synchronized void startListening() {
+        if (this.listeners++ == 0) this.dispatcher = new CommandDispatcher(this);
+    }
+
+    // connections still open after the last socket server returned get an error for their commands
+    private synchronized void stopListening() {
+        if (--this.listeners == 0) this.dispatcher.shutdown();
+    }
+
+    private void pooledListenOn(int portNumber, ExecutorService pool, boolean session) throws IOException {
+        this.startListening();
+        try (ServerSocket s = new ServerSocket(portNumber)) {
+            ServerLog.LOG.info(session ? "Server listening for sessions on port" : "Server listening concurrently on port", portNumber);
+            while (!Thread.interrupted()) {
+                Socket client = s.accept();
+                if (!session) client.setSoTimeout(READ_TIMEOUT_MILLIS);
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            GameServer.this.handleConnection(client, session);
+                        } catch (IOException e) {
+                            ServerLog.LOG.sampled(ServerLog.Level.INFO, "Connection closed", null);
+                        }
+                    }
+                });
+            }
+        } finally {
+            pool.shutdownNow();
+            this.stopListening();
+        }
+    }
+
+    // reads commands from the client socket and writes their results, in session mode until the client disconnects
+    private void handleConnection(Socket client, boolean session) throws IOException {
+        try (Socket s = client;
         BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream()));
         BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
-            System.out.println("Connection established");
+            ServerLog.LOG.sampled(ServerLog.Level.INFO, "Connection established", null);
             String incomingCommand = reader.readLine();
-            if(incomingCommand != null) {
-                System.out.println(new StringBuilder().append("Received message from ").append(incomingCommand));
-                String result = this.handleCommand(incomingCommand);
+            while (incomingCommand != null) {
+                ServerLog.LOG.sampled(ServerLog.Level.INFO, "Received message", incomingCommand);
+                String result = this.getDispatcher().submit(incomingCommand).join();
                 writer.write(result);
                 writer.write(new StringBuilder().append("\n").append(END_OF_TRANSMISSION).append("\n").toString());
-                writer.flush();
+                if (!session) {
+                    writer.flush();
+                    return;
+                }
+                // pipelined commands already buffered are answered before the replies are flushed together
+                if (!reader.ready()) writer.flush();
+                incomingCommand = reader.readLine();
             }
         }
     }
@@ -2,6 +2,6 @@ package edu.uob;
 
 public class GetAction extends Action {
     public GetAction() {
-        this.identifier = -2;
+        super(-2);
     }
 }
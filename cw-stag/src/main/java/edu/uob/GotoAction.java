@@ -2,6 +2,6 @@ package edu.uob;
 
 public class GotoAction extends Action {
     public GotoAction() {
-        this.identifier = -4;
+        super(-4);
     }
 }
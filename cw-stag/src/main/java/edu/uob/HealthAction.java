@@ -2,6 +2,6 @@ package edu.uob;
 
 public class HealthAction extends Action {
     public HealthAction() {
-        this.identifier = -6;
+        super(-6);
     }
 }
\ No newline at end of file
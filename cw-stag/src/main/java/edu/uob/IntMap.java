@@ -0,0 +1,143 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Open addressing hash map from primitive int keys to non-null values, so symbol keyed lookups never box.
+ * <p>
+ * Iteration without allocation goes over the slots: {@code for (int i = 0; i < map.capacity(); i++)}
+ * and skips the slots where {@link #valueAt(int)} is null.
+ */
+final class IntMap<V> {
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size = 0;
+
+    IntMap() {
+        this(4);
+    }
+
+    IntMap(int expectedSize) {
+        int capacity = 4;
+        while (capacity < expectedSize * 2) capacity <<= 1;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slotOf(int key) {
+        int slot = hash(key) & this.mask;
+        while (this.values[slot] != null) {
+            if (this.keys[slot] == key) return slot;
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    boolean containsKey(int key) {
+        return this.slotOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int slot = this.slotOf(key);
+        return slot < 0 ? null : (V) this.values[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        if (value == null) throw new IllegalArgumentException("IntMap does not hold null values");
+        int slot = hash(key) & this.mask;
+        while (this.values[slot] != null) {
+            if (this.keys[slot] == key) {
+                V old = (V) this.values[slot];
+                this.values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        if (++this.size * 2 > this.values.length) this.resize(this.values.length * 2);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int gap = this.slotOf(key);
+        if (gap < 0) return null;
+        V old = (V) this.values[gap];
+        // shift back the following entries of the probe sequence so that lookups never stop early
+        int slot = (gap + 1) & this.mask;
+        while (this.values[slot] != null) {
+            int ideal = hash(this.keys[slot]) & this.mask;
+            if (((slot - ideal) & this.mask) >= ((slot - gap) & this.mask)) {
+                this.keys[gap] = this.keys[slot];
+                this.values[gap] = this.values[slot];
+                gap = slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        this.values[gap] = null;
+        this.size--;
+        return old;
+    }
+
+    void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    int capacity() {
+        return this.values.length;
+    }
+
+    int keyAt(int slot) {
+        return this.keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int slot) {
+        return (V) this.values[slot];
+    }
+
+    List<V> values() {
+        List<V> list = new ArrayList<>(this.size);
+        for (int i = 0; i < this.values.length; i++) {
+            if (this.values[i] != null) list.add(this.valueAt(i));
+        }
+        return list;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) continue;
+            int slot = hash(oldKeys[i]) & this.mask;
+            while (this.values[slot] != null) slot = (slot + 1) & this.mask;
+            this.keys[slot] = oldKeys[i];
+            this.values[slot] = oldValues[i];
+        }
+    }
+}
@@ -2,6 +2,6 @@ package edu.uob;
 
 public class InvAction extends Action {
     public InvAction() {
-        this.identifier = -1;
+        super(-1);
     }
 }
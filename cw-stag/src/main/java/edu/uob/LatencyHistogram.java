@@ -0,0 +1,84 @@
+package edu.uob;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values, usually nanoseconds, in the style of HdrHistogram.
+ * <p>
+ * Values below 128 have their own bucket, above that every power of two is split into 64 linear buckets,
+ * so any recorded value is reported within 1/64 of itself. All values of a long fit in 3712 buckets,
+ * and recording is one atomic increment, safe from any number of threads.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_SUB_COUNT = SUB_COUNT / 2;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * HALF_SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    private static int indexOf(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        return shift * HALF_SUB_COUNT + (int) (value >>> shift);
+    }
+
+    // the largest value which falls into the bucket
+    private static long highestValueAt(int index) {
+        if (index < SUB_COUNT) return index;
+        int shift = index / HALF_SUB_COUNT - 1;
+        long sub = index % HALF_SUB_COUNT + HALF_SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    void record(long value) {
+        if (value < 0) value = 0;
+        this.counts.incrementAndGet(indexOf(value));
+        this.total.increment();
+        this.sum.add(value);
+        this.max.accumulate(value);
+    }
+
+    long getCount() {
+        return this.total.sum();
+    }
+
+    long getMax() {
+        return this.max.get();
+    }
+
+    double getMean() {
+        long count = this.getCount();
+        return count == 0 ? 0 : (double) this.sum.sum() / count;
+    }
+
+    /**
+     * Returns the value below or at which the given percentage of the recorded values are, within the bucket precision.
+     *
+     * @param percentile Between 0 and 100, for example 99.9
+     */
+    long getValueAtPercentile(double percentile) {
+        long count = this.getCount();
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) return Math.min(highestValueAt(i), this.getMax());
+        }
+        return this.getMax();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) this.counts.set(i, 0);
+        this.total.reset();
+        this.sum.reset();
+        this.max.reset();
+    }
+}
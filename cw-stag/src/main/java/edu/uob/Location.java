@@ -1,38 +1,74 @@
 package edu.uob;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Set;
 
 public class Location extends GameEntity {
 
-    private Map<String, MovableEntity> items = new HashMap<>();
+    private final IntMap<MovableEntity> items = new IntMap<>(); // key: symbol of the item
+    private int index; // vertex of the location in the graph of paths
+    private final Set<Player> players = new LinkedHashSet<>(); // players present, in order of arrival
+    private String rendered; // look reply up to the other players, null once items or paths changed
 
     public Location(String name) {
         super(name);
     }
 
+    public int getIndex() {
+        return this.index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     public void addItem(MovableEntity E) {
         if (E == null) return;
-        this.items.put(E.getName(), E);
+        this.items.put(E.getSymbol(), E);
+        this.rendered = null;
     }
 
-    public boolean hasItem(String name) {
-        return this.items.containsKey(name);
+    public boolean hasItem(int symbol) {
+        return this.items.containsKey(symbol);
     }
 
-    public MovableEntity removeItem(String name) {
-        return this.items.remove(name);
+    public MovableEntity removeItem(int symbol) {
+        MovableEntity item = this.items.remove(symbol);
+        if (item != null) this.rendered = null;
+        return item;
     }
 
     public List<MovableEntity> listItems() {
-        return this.items.entrySet().stream().map(new Function<Map.Entry<String, MovableEntity>, MovableEntity>() {
-            @Override
-            public MovableEntity apply(Map.Entry<String, MovableEntity> entry) {
-                return entry.getValue();
-            }
-        }).toList();
+        return this.items.values();
+    }
+
+    String getRendered() {
+        return this.rendered;
+    }
+
+    void setRendered(String rendered) {
+        this.rendered = rendered;
+    }
+
+    // called by Document whenever a path from this location is added or removed
+    void invalidateRendered() {
+        this.rendered = null;
+    }
+
+    // only called by Player.setCurrent
+    void addPlayer(Player player) {
+        this.players.add(player);
+    }
+
+    void removePlayer(Player player) {
+        this.players.remove(player);
+    }
+
+    public Set<Player> listPlayers() {
+        return Collections.unmodifiableSet(this.players);
     }
 
     public String toString() {
@@ -42,8 +78,8 @@ public class Location extends GameEntity {
             sb.append(entry.getKey()).append(": ").append(entry.getValue()).append(", ");
         }
 
-        for (Map.Entry<String, MovableEntity> item : this.items.entrySet()) {
-            sb.append(item.getValue().toString()).append(System.lineSeparator());
+        for (MovableEntity item : this.items.values()) {
+            sb.append(item.toString()).append(System.lineSeparator());
         }
         return sb.toString();
     }
@@ -0,0 +1,73 @@
+package edu.uob;
+
+import java.util.Arrays;
+
+/**
+ * Directed graph over location indices, each vertex keeping its destinations in a sorted int array.
+ * <p>
+ * Edge tests are a binary search over the destinations of one location, which stay few even in large worlds,
+ * and adding or removing an edge shifts that one array. Memory is one int per edge plus one array per location.
+ */
+final class LocationGraph {
+
+    private static final int[] NO_EDGES = new int[0];
+
+    private int[][] destinations = new int[16][];
+    private int[] degrees = new int[16];
+    private int vertices = 0;
+
+    // returns the index of the new vertex
+    int addVertex() {
+        if (this.vertices == this.destinations.length) {
+            this.destinations = Arrays.copyOf(this.destinations, this.vertices * 2);
+            this.degrees = Arrays.copyOf(this.degrees, this.vertices * 2);
+        }
+        this.destinations[this.vertices] = NO_EDGES;
+        return this.vertices++;
+    }
+
+    int vertices() {
+        return this.vertices;
+    }
+
+    boolean hasEdge(int from, int to) {
+        return Arrays.binarySearch(this.destinations[from], 0, this.degrees[from], to) >= 0;
+    }
+
+    // returns false if the edge already exists
+    boolean addEdge(int from, int to) {
+        int[] targets = this.destinations[from];
+        int degree = this.degrees[from];
+        int position = Arrays.binarySearch(targets, 0, degree, to);
+        if (position >= 0) return false;
+        position = -position - 1;
+        if (degree == targets.length) {
+            targets = Arrays.copyOf(targets, Math.max(4, degree * 2));
+            this.destinations[from] = targets;
+        }
+        System.arraycopy(targets, position, targets, position + 1, degree - position);
+        targets[position] = to;
+        this.degrees[from]++;
+        return true;
+    }
+
+    // returns false if there was no such edge
+    boolean removeEdge(int from, int to) {
+        int[] targets = this.destinations[from];
+        int degree = this.degrees[from];
+        int position = Arrays.binarySearch(targets, 0, degree, to);
+        if (position < 0) return false;
+        System.arraycopy(targets, position + 1, targets, position, degree - position - 1);
+        this.degrees[from]--;
+        return true;
+    }
+
+    int degree(int from) {
+        return this.degrees[from];
+    }
+
+    // the i-th destination of from, in increasing index order
+    int destination(int from, int i) {
+        return this.destinations[from][i];
+    }
+}
@@ -2,6 +2,6 @@ package edu.uob;
 
 public class LookAction extends Action {
     public LookAction() {
-        this.identifier = -5;
+        super(-5);
     }
 }
@@ -9,22 +9,6 @@ public class MyExceptions extends RuntimeException{
         super(message);
     }
 
-    public static class InvalidCommandException extends MyExceptions {
-        @Serial
-        private static final long serialVersionUID = 1;
-        public InvalidCommandException(String message) {
-            super(message);
-        }
-    }
-
-    public static class NoConstructorException extends MyExceptions {
-        @Serial
-        private static final long serialVersionUID = 1;
-        public NoConstructorException(String type) {
-            super(new StringBuilder().append("The constructor of ").append(type).append(" is not recognized!").toString());
-        }
-    }
-
     public static class InvalidParserException extends MyExceptions {
         @Serial
         private static final long serialVersionUID = 1;
@@ -73,11 +57,19 @@ public class MyExceptions extends RuntimeException{
         }
     }
 
-    public static class InvalidBasicAction extends MyExceptions {
+    public static class InvalidSnapshotException extends MyExceptions {
+        @Serial
+        private static final long serialVersionUID = 1;
+        public InvalidSnapshotException(String reason) {
+            super(new StringBuilder().append("Invalid world snapshot: ").append(reason).toString());
+        }
+    }
+
+    public static class InvalidActionException extends MyExceptions {
         @Serial
         private static final long serialVersionUID = 1;
-        public InvalidBasicAction() {
-            super("Invalid usage of basic action!");
+        public InvalidActionException(String reason) {
+            super(new StringBuilder().append("Invalid action: ").append(reason).toString());
         }
     }
 }
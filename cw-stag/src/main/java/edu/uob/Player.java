@@ -1,37 +1,38 @@
 package edu.uob;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
 
 public class Player extends MovableEntity {
     private int health = 3;
-    private final Map<String, Artefact> inventory = new HashMap<>();
+    private final IntMap<Artefact> inventory = new IntMap<>(); // key: symbol of the artefact
 
     public Player(String name) {
         super(name);
     }
 
+    // keeps the players present at both locations up to date
+    @Override
+    public void setCurrent(Location current) {
+        if (this.current == current) return;
+        if (this.current != null) this.current.removePlayer(this);
+        super.setCurrent(current);
+        if (current != null) current.addPlayer(this);
+    }
+
     public void insertItem(Artefact artefact) {
-        this.inventory.put(artefact.getName(), artefact);
+        this.inventory.put(artefact.getSymbol(), artefact);
     }
 
-    public boolean hasItem(String name) {
-        return this.inventory.containsKey(name);
+    public boolean hasItem(int symbol) {
+        return this.inventory.containsKey(symbol);
     }
 
-    public Artefact removeItem(String name) {
-        return this.inventory.remove(name);
+    public Artefact removeItem(int symbol) {
+        return this.inventory.remove(symbol);
     }
 
     public List<Artefact> listInventory() {
-        return this.inventory.entrySet().stream().map(new Function<Map.Entry<String, Artefact>, Artefact>() {
-            @Override
-            public Artefact apply(Map.Entry<String, Artefact> entry) {
-                return entry.getValue();
-            }
-        }).toList();
+        return this.inventory.values();
     }
 
     public void increase() {
@@ -44,6 +45,11 @@ public class Player extends MovableEntity {
         if (this.health < 0) this.health = 0;
     }
 
+    // for a restored player
+    void setHealth(int health) {
+        this.health = Math.max(0, Math.min(3, health));
+    }
+
     public void resetHealth() {
         this.health = 3;
     }
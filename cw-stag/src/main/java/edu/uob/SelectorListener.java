@@ -0,0 +1,255 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+
+// Non-blocking front end: one selector thread holds every connection, idle connections cost no thread and no buffer.
+final class SelectorListener {
+
+    private static final char END_OF_TRANSMISSION = 4;
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_COMMAND_LENGTH = 8192;
+
+    // the reply trailer is shared by all connections, each write uses its own duplicate
+    private static final ByteBuffer END_OF_REPLY = ByteBuffer.allocateDirect(3)
+            .put((byte) '\n').put((byte) END_OF_TRANSMISSION).put((byte) '\n').flip().asReadOnlyBuffer();
+
+    private final GameServer server;
+
+    // only the selector thread reads, so one direct buffer serves every connection
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    // results handed back by the world thread, written out by the selector thread
+    private final ConcurrentLinkedQueue<Reply> completed = new ConcurrentLinkedQueue<>();
+
+    // connections not read from while the queue of the world thread is full, in the order they filled it
+    private final List<SelectionKey> paused = new ArrayList<>();
+
+    SelectorListener(GameServer server) {
+        this.server = server;
+    }
+
+    void listenOn(int portNumber) throws IOException {
+        try (Selector selector = Selector.open();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(portNumber));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            ServerLog.LOG.info("Server listening without blocking on port", portNumber);
+            while (!Thread.interrupted()) {
+                selector.select();
+                this.writeCompleted();
+                this.resumePaused();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isValid() && key.isAcceptable()) this.accept(selector, serverChannel);
+                        if (key.isValid() && key.isReadable()) this.read(key);
+                        if (key.isValid() && key.isWritable()) this.write(key);
+                    } catch (IOException e) {
+                        this.close(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private void accept(Selector selector, ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        this.readBuffer.clear();
+        if (channel.read(this.readBuffer) < 0) {
+            // the client only closed its side, the commands it sent are still answered before the connection closes
+            connection.inputClosed = true;
+            this.write(key);
+            return;
+        }
+        this.readBuffer.flip();
+        int rest = this.submitCommands(key, connection, this.readBuffer);
+        if (!connection.keep(this.readBuffer, rest, this.readBuffer.limit())) {
+            this.close(key);
+        } else if (connection.waiting != null) {
+            // the world thread is behind, the connection is read again once its queue has room
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            this.paused.add(key);
+        }
+    }
+
+    // submits the commands of the bytes split on newlines, and returns where the bytes which are not submitted start
+    private int submitCommands(SelectionKey key, Connection connection, ByteBuffer bytes) {
+        int start = bytes.position();
+        for (int i = start; i < bytes.limit(); i++) {
+            if (bytes.get(i) != '\n') continue;
+            String command = connection.takeCommand(bytes, start, i);
+            start = i + 1;
+            if (!this.submit(key, command)) {
+                connection.waiting = command;
+                break;
+            }
+        }
+        return start;
+    }
+
+    // the world thread completes commands in queue order, so replies keep the order of the commands
+    private boolean submit(SelectionKey key, String command) {
+        CompletableFuture<String> result = this.server.getDispatcher().offer(command);
+        if (result == null) return false;
+        ((Connection) key.attachment()).unanswered++;
+        result.whenComplete(new BiConsumer<String, Throwable>() {
+            @Override
+            public void accept(String result, Throwable error) {
+                SelectorListener.this.completed.add(new Reply(key, result));
+                key.selector().wakeup();
+            }
+        });
+        return true;
+    }
+
+    // every completed command wakes the selector, so the queue is retried as soon as it may have room
+    private void resumePaused() {
+        Iterator<SelectionKey> keys = this.paused.iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            if (!key.isValid()) {
+                keys.remove();
+                continue;
+            }
+            Connection connection = (Connection) key.attachment();
+            if (!this.submit(key, connection.waiting)) return;
+            connection.waiting = null;
+            ByteBuffer kept = connection.takeKept();
+            int rest = this.submitCommands(key, connection, kept);
+            // the rest of a read always fits, it was kept in the first place
+            connection.keep(kept, rest, kept.limit());
+            if (connection.waiting != null) return;
+            keys.remove();
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    private void writeCompleted() {
+        Reply reply = this.completed.poll();
+        while (reply != null) {
+            SelectionKey key = reply.key;
+            if (key.isValid()) {
+                try {
+                    if (reply.result == null) throw new IOException("Command failed");
+                    Connection connection = (Connection) key.attachment();
+                    connection.unanswered--;
+                    connection.pending.add(ByteBuffer.wrap(reply.result.getBytes(StandardCharsets.UTF_8)));
+                    connection.pending.add(END_OF_REPLY.duplicate());
+                    this.write(key);
+                } catch (IOException e) {
+                    this.close(key);
+                }
+            }
+            reply = this.completed.poll();
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        if (!connection.pending.isEmpty()) {
+            // gathering write of every pending reply and trailer
+            channel.write(connection.pending.toArray(new ByteBuffer[0]));
+            while (!connection.pending.isEmpty() && !connection.pending.peek().hasRemaining()) {
+                connection.pending.poll();
+            }
+        }
+        if (connection.inputClosed && connection.unanswered == 0 && connection.pending.isEmpty()) {
+            this.close(key);
+            return;
+        }
+        int read = connection.waiting == null && !connection.inputClosed ? SelectionKey.OP_READ : 0;
+        key.interestOps(connection.pending.isEmpty() ? read : read | SelectionKey.OP_WRITE);
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            ServerLog.LOG.sampled(ServerLog.Level.INFO, "Connection closed", null);
+        }
+    }
+
+    private static final class Reply {
+        private final SelectionKey key;
+        private final String result;
+
+        private Reply(SelectionKey key, String result) {
+            this.key = key;
+            this.result = result;
+        }
+    }
+
+    private static final class Connection {
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        // a command the queue of the world thread had no room for, nothing is read until it is submitted
+        private String waiting;
+        // commands submitted and not answered yet, and whether the client sends no more
+        private int unanswered = 0;
+        private boolean inputClosed = false;
+        // bytes of a command split across reads, only allocated when that happens
+        private byte[] partial;
+        private int partialLength = 0;
+
+        private String takeCommand(ByteBuffer buffer, int from, int to) {
+            byte[] bytes = new byte[this.partialLength + to - from];
+            if (this.partialLength > 0) System.arraycopy(this.partial, 0, bytes, 0, this.partialLength);
+            buffer.get(from, bytes, this.partialLength, to - from);
+            this.partial = null;
+            this.partialLength = 0;
+            int length = bytes.length;
+            if (length > 0 && bytes[length - 1] == '\r') length--;
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        // hands over the kept bytes, for commands which waited for room in the queue
+        private ByteBuffer takeKept() {
+            ByteBuffer kept = ByteBuffer.wrap(this.partial == null ? new byte[0] : this.partial, 0, this.partialLength);
+            this.partial = null;
+            this.partialLength = 0;
+            return kept;
+        }
+
+        // returns false if the unfinished command grows beyond the allowed length
+        private boolean keep(ByteBuffer buffer, int from, int to) {
+            if (from == to) return true;
+            int length = this.partialLength + to - from;
+            if (length > MAX_COMMAND_LENGTH) return false;
+            if (this.partial == null) {
+                this.partial = new byte[length];
+            } else if (this.partial.length < length) {
+                this.partial = Arrays.copyOf(this.partial, Math.max(length, this.partial.length * 2));
+            }
+            buffer.get(from, this.partial, this.partialLength, to - from);
+            this.partialLength = length;
+            return true;
+        }
+    }
+}
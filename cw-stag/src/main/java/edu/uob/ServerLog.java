@@ -0,0 +1,166 @@
+package edu.uob;
+
+import java.io.PrintStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log of the socket servers, so console output never sits on the path of a request.
+ * <p>
+ * Threads logging an event only claim a slot of a ring buffer and store the message and its detail, a daemon thread
+ * formats them into {@code key=value} lines and prints them. Events below the level are dropped before anything
+ * else happens, sampled events are kept one in every {@code sample}, and at most {@code rate} events per second
+ * are kept. Events which are over the rate or find the ring full are dropped and counted, and the count is
+ * printed with the next event which gets through.
+ * <p>
+ * The settings are the system properties {@code stag.log.level} (DEBUG, INFO, WARN, ERROR or OFF, INFO by default),
+ * {@code stag.log.sample} (1 by default) and {@code stag.log.rate} (10000 by default).
+ */
+final class ServerLog {
+
+    enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    private static final int CAPACITY = 8192;
+
+    static final ServerLog LOG = new ServerLog(System.out,
+            Level.valueOf(System.getProperty("stag.log.level", "INFO").toUpperCase()),
+            Integer.getInteger("stag.log.sample", 1), Integer.getInteger("stag.log.rate", 10000));
+
+    private static final class Slot {
+        // sequence of the event held, published last so the fields above are visible to the printer
+        private volatile long sequence = -1;
+        private Level level;
+        private long time;
+        private String message;
+        private Object detail;
+    }
+
+    private final PrintStream out;
+    private final Level level;
+    private final int sample;
+    private final int rate;
+    private final Slot[] slots = new Slot[CAPACITY];
+    // next sequence to claim by a logging thread, and next sequence to print
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long printed = 0;
+    // events kept during the current second
+    private final AtomicLong window = new AtomicLong();
+    private final AtomicLong windowCount = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    ServerLog(PrintStream out, Level level, int sample, int rate) {
+        this.out = out;
+        this.level = level;
+        this.sample = Math.max(1, sample);
+        this.rate = rate;
+        for (int i = 0; i < CAPACITY; i++) this.slots[i] = new Slot();
+        if (level == Level.OFF) return;
+        Thread printer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ServerLog.this.printLoop();
+            }
+        }, "stag-log");
+        printer.setDaemon(true);
+        printer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ServerLog.this.drain();
+            }
+        }, "stag-log-drain"));
+    }
+
+    boolean isEnabled(Level level) {
+        return level.compareTo(this.level) >= 0 && level != Level.OFF;
+    }
+
+    void debug(String message, Object detail) {
+        this.log(Level.DEBUG, message, detail);
+    }
+
+    void info(String message, Object detail) {
+        this.log(Level.INFO, message, detail);
+    }
+
+    void warn(String message, Object detail) {
+        this.log(Level.WARN, message, detail);
+    }
+
+    // for frequent events such as connections and commands, of which only one in every sample is kept
+    void sampled(Level level, String message, Object detail) {
+        if (!this.isEnabled(level)) return;
+        if (this.sample > 1 && ThreadLocalRandom.current().nextInt(this.sample) != 0) return;
+        this.log(level, message, detail);
+    }
+
+    // the detail is only turned into text by the printer thread, so it must not change after being logged
+    void log(Level level, String message, Object detail) {
+        if (!this.isEnabled(level) || !this.withinRate()) return;
+        long sequence;
+        do {
+            sequence = this.claimed.get();
+            // the ring is full until the printer catches up
+            if (sequence - this.printed >= CAPACITY) {
+                this.dropped.incrementAndGet();
+                return;
+            }
+        } while (!this.claimed.compareAndSet(sequence, sequence + 1));
+        Slot slot = this.slots[(int) (sequence % CAPACITY)];
+        slot.level = level;
+        slot.time = System.currentTimeMillis();
+        slot.message = message;
+        slot.detail = detail;
+        slot.sequence = sequence;
+    }
+
+    private boolean withinRate() {
+        long second = System.nanoTime() / 1_000_000_000L;
+        long current = this.window.get();
+        if (second != current && this.window.compareAndSet(current, second)) this.windowCount.set(0);
+        if (this.windowCount.incrementAndGet() <= this.rate) return true;
+        this.dropped.incrementAndGet();
+        return false;
+    }
+
+    private void printLoop() {
+        StringBuilder sb = new StringBuilder();
+        int idle = 0;
+        while (true) {
+            if (this.printNext(sb)) {
+                idle = 0;
+            } else {
+                // back off from 50 microseconds up to 10 milliseconds while nothing is logged
+                LockSupport.parkNanos(Math.min(10_000_000L, 50_000L << Math.min(idle++, 8)));
+            }
+        }
+    }
+
+    // prints everything already published, for the last events before the JVM exits
+    private synchronized void drain() {
+        StringBuilder sb = new StringBuilder();
+        while (this.printNext(sb)) {
+            // keep printing
+        }
+        this.out.flush();
+    }
+
+    private synchronized boolean printNext(StringBuilder sb) {
+        long sequence = this.printed;
+        Slot slot = this.slots[(int) (sequence % CAPACITY)];
+        if (slot.sequence != sequence) return false;
+        sb.setLength(0);
+        long dropped = this.dropped.getAndSet(0);
+        if (dropped > 0) sb.append("level=WARN msg=\"Log events dropped\" count=").append(dropped).append(System.lineSeparator());
+        sb.append("time=").append(slot.time).append(" level=").append(slot.level).append(" msg=\"").append(slot.message).append('"');
+        if (slot.detail != null) sb.append(" detail=\"").append(slot.detail).append('"');
+        slot.message = null;
+        slot.detail = null;
+        this.printed = sequence + 1;
+        this.out.println(sb);
+        return true;
+    }
+}
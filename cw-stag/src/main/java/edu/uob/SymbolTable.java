@@ -0,0 +1,121 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interns entity names and trigger words into dense int symbols while the game files are loaded.
+ * <p>
+ * Commands resolve each of their words to a symbol once, everything after that compares ints.
+ */
+public final class SymbolTable {
+
+    public static final int NO_SYMBOL = -1;
+
+    private final List<String> names = new ArrayList<>();
+    // open addressing table of symbol + 1, zero marks an empty slot
+    private int[] slots = new int[64];
+
+    public synchronized int intern(String name) {
+        int symbol = this.lookup(name);
+        if (symbol != NO_SYMBOL) return symbol;
+        symbol = this.names.size();
+        this.names.add(name);
+        if (this.names.size() * 2 > this.slots.length) {
+            this.rehash(this.slots.length * 2);
+        } else {
+            this.insert(symbol);
+        }
+        return symbol;
+    }
+
+    public int lookup(CharSequence name) {
+        return this.lookup(name, 0, name.length());
+    }
+
+    // looks up the characters from (inclusive) to (exclusive) of text without copying them
+    public int lookup(CharSequence text, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) h = 31 * h + text.charAt(i);
+        int mask = this.slots.length - 1;
+        int slot = mix(h) & mask;
+        while (this.slots[slot] != 0) {
+            int symbol = this.slots[slot] - 1;
+            String name = this.names.get(symbol);
+            if (name.length() == to - from && this.sameChars(name, text, from)) return symbol;
+            slot = (slot + 1) & mask;
+        }
+        return NO_SYMBOL;
+    }
+
+    // looks up the characters from (inclusive) to (exclusive) of a buffer, for tokenizers which reuse their buffer
+    public int lookup(char[] chars, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) h = 31 * h + chars[i];
+        int mask = this.slots.length - 1;
+        int slot = mix(h) & mask;
+        while (this.slots[slot] != 0) {
+            int symbol = this.slots[slot] - 1;
+            String name = this.names.get(symbol);
+            if (name.length() == to - from && this.sameChars(name, chars, from)) return symbol;
+            slot = (slot + 1) & mask;
+        }
+        return NO_SYMBOL;
+    }
+
+    // a table with the same symbols, which a reload can intern into before it is known to be valid
+    synchronized SymbolTable copy() {
+        SymbolTable copy = new SymbolTable();
+        copy.names.addAll(this.names);
+        copy.slots = this.slots.clone();
+        return copy;
+    }
+
+    // interns the symbols a copy of this table added, which get the same numbers as long as this table did not grow
+    synchronized void internAll(SymbolTable copy) {
+        for (int symbol = this.names.size(); symbol < copy.size(); symbol++) {
+            if (this.intern(copy.name(symbol)) != symbol) throw new IllegalStateException("symbol table changed since it was copied");
+        }
+    }
+
+    public String name(int symbol) {
+        return this.names.get(symbol);
+    }
+
+    public int size() {
+        return this.names.size();
+    }
+
+    private boolean sameChars(String name, CharSequence text, int from) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(from + i)) return false;
+        }
+        return true;
+    }
+
+    private boolean sameChars(String name, char[] chars, int from) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars[from + i]) return false;
+        }
+        return true;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void insert(int symbol) {
+        int mask = this.slots.length - 1;
+        int slot = mix(this.names.get(symbol).hashCode()) & mask;
+        while (this.slots[slot] != 0) slot = (slot + 1) & mask;
+        this.slots[slot] = symbol + 1;
+    }
+
+    private void rehash(int capacity) {
+        this.slots = new int[capacity];
+        for (int symbol = 0; symbol < this.names.size(); symbol++) {
+            this.insert(symbol);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package edu.uob;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Word-level Aho-Corasick automaton over every trigger phrase, compiled once when the actions are loaded.
+ * <p>
+ * A command is matched in one pass over its words: each word follows one transition (or failure links),
+ * and every trigger phrase ending at that word is reported together with the index of its first word.
+ * Words are interned symbols, a word which is part of no trigger ({@link SymbolTable#NO_SYMBOL}) resets the match.
+ */
+final class TriggerAutomaton {
+
+    interface MatchConsumer {
+        void accept(Action action, int start);
+    }
+
+    private static final class State {
+        private final IntMap<State> next = new IntMap<>();
+        private final List<Action> outputs = new ArrayList<>(1);
+        private final int depth;
+        private State fail;
+        // nearest state on the failure chain which has outputs, so matching skips states without any
+        private State dictionary;
+
+        private State(int depth) {
+            this.depth = depth;
+        }
+    }
+
+    private final State root = new State(0);
+
+    void add(int[] phrase, Action action) {
+        State state = this.root;
+        for (int word : phrase) {
+            State next = state.next.get(word);
+            if (next == null) {
+                next = new State(state.depth + 1);
+                state.next.put(word, next);
+            }
+            state = next;
+        }
+        if (!state.outputs.contains(action)) state.outputs.add(action);
+    }
+
+    // computes failure and dictionary links breadth first, must be called once all phrases are added
+    void build() {
+        Queue<State> queue = new ArrayDeque<>();
+        this.root.fail = this.root;
+        for (State child : this.root.next.values()) {
+            child.fail = this.root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            State state = queue.poll();
+            for (int i = 0; i < state.next.capacity(); i++) {
+                State child = state.next.valueAt(i);
+                if (child == null) continue;
+                int word = state.next.keyAt(i);
+                State fail = state.fail;
+                while (fail != this.root && !fail.next.containsKey(word)) {
+                    fail = fail.fail;
+                }
+                State target = fail.next.get(word);
+                child.fail = (target == null || target == child) ? this.root : target;
+                child.dictionary = child.fail.outputs.isEmpty() ? child.fail.dictionary : child.fail;
+                queue.add(child);
+            }
+        }
+    }
+
+    // matches the first count words
+    void match(int[] words, int count, MatchConsumer consumer) {
+        State state = this.root;
+        for (int end = 0; end < count; end++) {
+            int word = words[end];
+            while (state != this.root && !state.next.containsKey(word)) {
+                state = state.fail;
+            }
+            State next = state.next.get(word);
+            state = next == null ? this.root : next;
+            State output = state.outputs.isEmpty() ? state.dictionary : state;
+            while (output != null) {
+                for (Action action : output.outputs) {
+                    consumer.accept(action, end - output.depth + 1);
+                }
+                output = output.dictionary;
+            }
+        }
+    }
+}
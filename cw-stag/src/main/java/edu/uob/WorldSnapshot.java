@@ -0,0 +1,370 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Saves the live world, players included, to a compact binary file and restores it without the Graphviz and DOM parsers.
+ * <p>
+ * The file starts with a magic number, a format version and the sequence number of the last journaled command
+ * applied to the world, followed by the symbol table, so that every later reference to a name is the varint of its
+ * symbol and a restored world resolves commands to the same symbols. Then come the locations with their attributes, the players, the items of every location, the paths and the
+ * inventories by location index, and last the custom actions. Every integer is a varint, strings are UTF-8
+ * prefixed by their length. A snapshot is written to a temporary file which then replaces the target, so a crash
+ * while saving leaves the previous snapshot intact, and it is restored from a read-only mapping of the file.
+ */
+final class WorldSnapshot {
+
+    static final int MAGIC = 0x53544147; // "STAG"
+    // version 2 added the sequence number of the last journaled command applied to the world
+    static final int VERSION = 2;
+
+    private static final int ARTEFACT = 0;
+    private static final int FURNITURE = 1;
+    private static final int CHARACTER = 2;
+    private static final int PLAYER = 3;
+
+    private WorldSnapshot() {
+    }
+
+    // must run on the thread applying commands, or while it is held off
+    static void write(Controller controller, Path file) throws IOException {
+        Encoder out = new Encoder();
+        encode(controller, out);
+        Path temporary = file.resolveSibling(new StringBuilder().append(file.getFileName()).append(".tmp").toString());
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = out.contents();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // the file is mapped rather than read, so restoring scans the page cache instead of copying the file to the heap first
+    static Controller read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new MyExceptions.InvalidSnapshotException("larger than a mapped buffer");
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    static void encode(Controller controller, Encoder out) {
+        Document document = controller.getDocument();
+        SymbolTable symbols = document.getSymbols();
+        out.putInt(MAGIC);
+        out.putVarInt(VERSION);
+        out.putVarLong(controller.getAppliedSequence());
+
+        out.putVarInt(symbols.size());
+        for (int symbol = 0; symbol < symbols.size(); symbol++) out.putString(symbols.name(symbol));
+
+        List<Location> locations = document.listLocations();
+        out.putVarInt(locations.size());
+        for (Location location : locations) {
+            out.putVarInt(location.getSymbol());
+            putAttributes(out, location.attributes);
+        }
+        out.putVarInt(document.getStoreroom().getIndex());
+
+        // players are numbered in this order by the items they own or that are players
+        List<Player> players = new ArrayList<>(document.getPlayers().values());
+        Map<Player, Integer> playerIndices = new HashMap<>();
+        out.putVarInt(players.size());
+        for (Player player : players) {
+            playerIndices.put(player, playerIndices.size());
+            out.putString(player.getName());
+            out.putVarInt(player.getHealth());
+            out.putVarInt(player.getCurrent().getIndex());
+            putAttributes(out, player.attributes);
+        }
+
+        for (Location location : locations) {
+            List<MovableEntity> items = location.listItems();
+            out.putVarInt(items.size());
+            for (MovableEntity item : items) {
+                if (item instanceof Player player) {
+                    out.putVarInt(PLAYER);
+                    out.putVarInt(playerIndices.get(player));
+                    continue;
+                }
+                out.putVarInt(item instanceof Artefact ? ARTEFACT : item instanceof Furniture ? FURNITURE : CHARACTER);
+                out.putVarInt(item.getSymbol());
+                putAttributes(out, item.attributes);
+            }
+        }
+
+        for (Location location : locations) {
+            List<Location> destinations = document.getEdgesFrom(location);
+            out.putVarInt(destinations.size());
+            for (Location destination : destinations) out.putVarInt(destination.getIndex());
+        }
+
+        for (Player player : players) {
+            List<Artefact> inventory = player.listInventory();
+            out.putVarInt(inventory.size());
+            for (Artefact artefact : inventory) out.putVarInt(artefact.getSymbol());
+        }
+
+        List<Action> actions = controller.getActions().listCustomizedActions();
+        out.putVarInt(actions.size());
+        for (Action action : actions) {
+            out.putVarInt(action.getTriggerPhrases().size());
+            for (List<String> phrase : action.getTriggerPhrases()) putNames(out, symbols, phrase);
+            putNames(out, symbols, action.getSubjects());
+            putNames(out, symbols, action.getConsumed());
+            putNames(out, symbols, action.getProduced());
+            out.putString(action.getNarration());
+        }
+    }
+
+    static Controller decode(ByteBuffer in) {
+        try {
+            if (in.getInt() != MAGIC) throw new MyExceptions.InvalidSnapshotException("not a snapshot file");
+            int version = getVarInt(in);
+            if (version < 1 || version > VERSION) {
+                throw new MyExceptions.InvalidSnapshotException(new StringBuilder().append("unsupported version ").append(version).toString());
+            }
+            long appliedSequence = version >= 2 ? getVarLong(in) : 0;
+
+            SymbolTable symbols = new SymbolTable();
+            int symbolCount = getCount(in);
+            for (int symbol = 0; symbol < symbolCount; symbol++) symbols.intern(getString(in));
+
+            Document document = new Document(symbols);
+            int locationCount = getCount(in);
+            for (int i = 0; i < locationCount; i++) {
+                Location location = new Location(symbols.name(getIndex(in, symbols.size())));
+                location.setAttributes(getAttributes(in));
+                document.addLocation(location);
+            }
+            document.setStoreroom(document.getLocation(getIndex(in, locationCount)));
+
+            List<Player> players = new ArrayList<>();
+            int playerCount = getCount(in);
+            for (int i = 0; i < playerCount; i++) {
+                Player player = new Player(getString(in));
+                player.setHealth(getVarInt(in));
+                player.setCurrent(document.getLocation(getIndex(in, locationCount)));
+                player.setAttributes(getAttributes(in));
+                document.addPlayer(player);
+                players.add(player);
+            }
+
+            for (int index = 0; index < locationCount; index++) {
+                Location location = document.getLocation(index);
+                int itemCount = getCount(in);
+                for (int i = 0; i < itemCount; i++) {
+                    int type = getVarInt(in);
+                    if (type == PLAYER) {
+                        // a player listed by the entities file, which stays among the items where it started
+                        Player player = players.get(getIndex(in, playerCount));
+                        player.setSymbol(symbols.intern(player.getName()));
+                        location.addItem(player);
+                        continue;
+                    }
+                    String name = symbols.name(getIndex(in, symbols.size()));
+                    MovableEntity item = switch (type) {
+                        case ARTEFACT -> new Artefact(name);
+                        case FURNITURE -> new Furniture(name);
+                        case CHARACTER -> new Character(name);
+                        default -> throw new MyExceptions.InvalidSnapshotException("unknown item type");
+                    };
+                    item.setAttributes(getAttributes(in));
+                    document.placeItem(item, location);
+                }
+            }
+
+            for (int index = 0; index < locationCount; index++) {
+                Location from = document.getLocation(index);
+                int degree = getCount(in);
+                for (int i = 0; i < degree; i++) document.addEdge(from, document.getLocation(getIndex(in, locationCount)));
+            }
+
+            // carried artefacts stay in the storeroom, owned by their player
+            for (Player player : players) {
+                int size = getCount(in);
+                for (int i = 0; i < size; i++) {
+                    if (!(document.getEntity(getVarInt(in)) instanceof Artefact artefact)) {
+                        throw new MyExceptions.InvalidSnapshotException("inventory holds no artefact");
+                    }
+                    player.insertItem(artefact);
+                    artefact.setOwner(player);
+                }
+            }
+
+            List<Action> actions = new ArrayList<>();
+            int actionCount = getCount(in);
+            for (int i = 0; i < actionCount; i++) {
+                List<List<String>> phrases = new ArrayList<>();
+                int phraseCount = getCount(in);
+                for (int j = 0; j < phraseCount; j++) phrases.add(getNames(in, symbols));
+                Set<String> subjects = new HashSet<>(getNames(in, symbols));
+                List<String> consumed = getNames(in, symbols);
+                List<String> produced = getNames(in, symbols);
+                actions.add(new Action(i, phrases, subjects, consumed, produced, getString(in), symbols));
+            }
+            Controller controller = new Controller(document, new GameActions(actions, symbols));
+            controller.setAppliedSequence(appliedSequence);
+            return controller;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new MyExceptions.InvalidSnapshotException("truncated or corrupt file");
+        }
+    }
+
+    private static void putAttributes(Encoder out, Map<String, String> attributes) {
+        out.putVarInt(attributes.size());
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            out.putString(entry.getKey());
+            out.putString(entry.getValue());
+        }
+    }
+
+    private static Map<String, String> getAttributes(ByteBuffer in) {
+        int size = getCount(in);
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < size; i++) attributes.put(getString(in), getString(in));
+        return attributes;
+    }
+
+    // names of actions are interned when they are loaded, so they are written as symbols
+    private static void putNames(Encoder out, SymbolTable symbols, Collection<String> names) {
+        out.putVarInt(names.size());
+        for (String name : names) out.putVarInt(symbols.lookup(name));
+    }
+
+    private static List<String> getNames(ByteBuffer in, SymbolTable symbols) {
+        int size = getCount(in);
+        List<String> names = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) names.add(symbols.name(getIndex(in, symbols.size())));
+        return names;
+    }
+
+    static int getVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new MyExceptions.InvalidSnapshotException("malformed varint");
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new MyExceptions.InvalidSnapshotException("malformed varint");
+    }
+
+    // the number of elements which follow, each taking at least one byte, so a corrupt count allocates nothing
+    private static int getCount(ByteBuffer in) {
+        int count = getVarInt(in);
+        if (count < 0 || count > in.remaining()) throw new MyExceptions.InvalidSnapshotException("invalid count");
+        return count;
+    }
+
+    private static int getIndex(ByteBuffer in, int size) {
+        int index = getVarInt(in);
+        if (index < 0 || index >= size) throw new MyExceptions.InvalidSnapshotException("index out of range");
+        return index;
+    }
+
+    static String getString(ByteBuffer in) {
+        int length = getVarInt(in);
+        if (length < 0 || length > in.remaining()) throw new MyExceptions.InvalidSnapshotException("invalid string length");
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // growable heap buffer with the same encodings as the readers above
+    static final class Encoder {
+        private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        private void ensure(int bytes) {
+            if (this.buffer.remaining() >= bytes) return;
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(this.buffer.capacity() * 2, this.buffer.position() + bytes));
+            this.buffer.flip();
+            larger.put(this.buffer);
+            this.buffer = larger;
+        }
+
+        int position() {
+            return this.buffer.position();
+        }
+
+        // overwrites four bytes already written, for lengths and checksums known after what follows them
+        void putInt(int at, int value) {
+            this.buffer.putInt(at, value);
+        }
+
+        int crc(int from, int to) {
+            CRC32 crc = new CRC32();
+            crc.update(this.buffer.duplicate().position(from).limit(to));
+            return (int) crc.getValue();
+        }
+
+        // the bytes written so far, ready to be written out
+        ByteBuffer contents() {
+            return this.buffer.duplicate().flip();
+        }
+
+        void clear() {
+            this.buffer.clear();
+        }
+
+        void putInt(int value) {
+            this.ensure(4);
+            this.buffer.putInt(value);
+        }
+
+        void putByte(int value) {
+            this.ensure(1);
+            this.buffer.put((byte) value);
+        }
+
+        void putVarInt(int value) {
+            this.ensure(5);
+            while ((value & ~0x7F) != 0) {
+                this.buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            this.buffer.put((byte) value);
+        }
+
+        void putVarLong(long value) {
+            this.ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                this.buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            this.buffer.put((byte) value);
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.putVarInt(bytes.length);
+            this.ensure(bytes.length);
+            this.buffer.put(bytes);
+        }
+    }
+}
@@ -335,6 +335,8 @@ public class MyTests {
         assertRejectCommand(sendCommandToServer("me$: look"));
         assertRejectCommand(sendCommandToServer("player1: look"));
         assertRejectCommand(sendCommandToServer("pla*yer: look"));
+        // a player cannot be named after an entity
+        assertRejectCommand(sendCommandToServer("axe: look"));
     }
 
     // if player died, all items should be dropped and player transited to initial location.
@@ -1,14 +1,525 @@
 package edu.uob;
 
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.alexmerz.graphviz.Parser;
+import com.alexmerz.graphviz.objects.Edge;
+import com.alexmerz.graphviz.objects.Graph;
+import com.alexmerz.graphviz.objects.Node;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class MyUnitTests {
 
-    // GameActions: mightBeAction
+    // CommandTokenizer: tokenize
 
-    // GameActions: possibleActions
+    // GameActions: matchActions
 
-    // GameActions: setGameActions
+    // GameActions: setGameActions, streaming
 
-    // Action: isThisAction
+    // TriggerAutomaton: match
 
     // Action: checkSubjects
+
+    // LocationGraph: addEdge, removeEdge
+
+    // DotReader: read
+
+    // Controller: validate
+
+    // ActionPlan: check, apply
+
+    // GameServer: reloadActions, reloadEntities, watchConfig
+
+    // Player: setCurrent
+
+    // WorldGenerator: write
+
+    // LatencyHistogram: record, getValueAtPercentile
+
+    // CommandMetrics: record, finish
+
+    // ServerLog: log, sampled
+
+    // WorldSnapshot: write, read
+
+    // CommandJournal: replay, compact
+
+    private final SymbolTable symbols = new SymbolTable();
+
+    // a file of the config directory, such as basic-entities.dot
+    static File configFile(String name) {
+        return Paths.get("config" + File.separator + name).toAbsolutePath().toFile();
+    }
+
+    Action action(int identifier) {
+        return new Action(identifier, List.of(), Set.of(), List.of(), List.of(), "", symbols);
+    }
+
+    int[] intern(String phrase) {
+        String[] words = phrase.split("\\s+");
+        int[] tokens = new int[words.length];
+        for (int i = 0; i < words.length; i++) tokens[i] = symbols.intern(words[i]);
+        return tokens;
+    }
+
+    List<String> match(TriggerAutomaton automaton, String command) {
+        String[] words = command.split("\\s+");
+        int[] tokens = new int[words.length];
+        for (int i = 0; i < words.length; i++) tokens[i] = symbols.lookup(words[i]);
+        List<String> matches = new ArrayList<>();
+        automaton.match(tokens, tokens.length, (action, start) -> matches.add(action.getIdentifier() + "@" + start));
+        return matches;
+    }
+
+    // every phrase is reported with the index of its first word, including phrases inside other phrases
+    @Test
+    void testAutomatonReportsOverlappingPhrases() {
+        TriggerAutomaton automaton = new TriggerAutomaton();
+        Action cut = this.action(0);
+        automaton.add(this.intern("cut"), cut);
+        automaton.add(this.intern("cut down"), cut);
+        automaton.add(this.intern("drink double poison"), this.action(1));
+        automaton.add(this.intern("double poison tree"), this.action(2));
+        automaton.build();
+
+        assertEquals(List.of("0@2", "0@2"), this.match(automaton, "please just cut down tree"));
+        assertEquals(List.of("1@0", "2@1"), this.match(automaton, "drink double poison tree"));
+        // after a mismatch the failure links keep the longest suffix, so no phrase is missed
+        assertEquals(List.of("1@1", "2@2"), this.match(automaton, "drink drink double poison tree"));
+        assertTrue(this.match(automaton, "drink poison double").isEmpty());
+    }
+
+    @Test
+    void testSymbolTableLooksUpSpansAndIntMapRemoves() {
+        int axe = symbols.intern("axe");
+        assertEquals(axe, symbols.intern("axe"));
+        assertEquals(axe, symbols.lookup("get axe now", 4, 7));
+        assertEquals(SymbolTable.NO_SYMBOL, symbols.lookup("ax"));
+
+        IntMap<String> map = new IntMap<>();
+        for (int i = 0; i < 100; i++) map.put(i * 16, "v" + i);
+        for (int i = 0; i < 100; i += 2) assertEquals("v" + i, map.remove(i * 16));
+        assertEquals(50, map.size());
+        for (int i = 0; i < 100; i++) assertEquals(i % 2 == 1, map.containsKey(i * 16));
+    }
+
+    // punctuation is only kept between two letters, dropped characters do not split words
+    @Test
+    void testTokenizerKeepsPunctuationRules() {
+        CommandTokenizer tokenizer = new CommandTokenizer(symbols);
+        int[] expected = {symbols.intern("get"), symbols.intern("the"), symbols.intern("potion"), symbols.intern("don't"), symbols.intern("x")};
+        int count = tokenizer.tokenize("me: -Get,  the\tPO!!tion; DON'T x.", 3);
+        assertArrayEquals(expected, Arrays.copyOf(tokenizer.tokens(), count));
+        assertEquals(SymbolTable.NO_SYMBOL, tokenizer.tokens()[tokenizer.tokenize("me: unknown", 3) - 1]);
+        assertEquals(0, tokenizer.tokenize("me: ?! ", 3));
+    }
+
+    @Test
+    void testLocationGraphKeepsSortedDestinations() {
+        LocationGraph graph = new LocationGraph();
+        for (int i = 0; i < 20; i++) assertEquals(i, graph.addVertex());
+        assertTrue(graph.addEdge(0, 7));
+        assertTrue(graph.addEdge(0, 3));
+        assertTrue(graph.addEdge(0, 19));
+        assertFalse(graph.addEdge(0, 3));
+        assertEquals(3, graph.degree(0));
+        assertEquals(3, graph.destination(0, 0));
+        assertEquals(19, graph.destination(0, 2));
+        assertTrue(graph.hasEdge(0, 7));
+        assertFalse(graph.hasEdge(7, 0));
+        assertTrue(graph.removeEdge(0, 7));
+        assertFalse(graph.removeEdge(0, 7));
+        assertFalse(graph.hasEdge(0, 7));
+        assertEquals(19, graph.destination(0, 1));
+    }
+
+    @Test
+    void testPlayerMovesBetweenLocationOccupants() {
+        Location cabin = new Location("cabin");
+        Location forest = new Location("forest");
+        Player simon = new Player("simon");
+        Player sion = new Player("sion");
+        simon.setCurrent(cabin);
+        sion.setCurrent(cabin);
+        assertEquals(List.of(simon, sion), new ArrayList<>(cabin.listPlayers()));
+        simon.setCurrent(forest);
+        assertEquals(Set.of(sion), cabin.listPlayers());
+        assertEquals(Set.of(simon), forest.listPlayers());
+    }
+
+    // the same seed gives the same files, which the game loads and plays
+    @Test
+    void testGeneratedWorldIsReproducibleAndPlayable(@TempDir File directory) throws Exception {
+        WorldGenerator generator = new WorldGenerator().seed(7).locations(300).density(3).actions(40).overlap(0.3);
+        File[] first = generator.write(directory, "first");
+        File[] second = generator.write(directory, "second");
+        assertEquals(Files.readString(first[0].toPath()), Files.readString(second[0].toPath()));
+        assertEquals(Files.readString(first[1].toPath()), Files.readString(second[1].toPath()));
+
+        Controller controller = new Controller(first[0], first[1]);
+        String look = controller.handleCommand("simon: look");
+        assertTrue(look.contains(WorldGenerator.locationName(1)));
+        assertTrue(look.contains(WorldGenerator.artefactName(0)));
+        assertTrue(controller.handleCommand("simon: get " + WorldGenerator.artefactName(1)).contains(WorldGenerator.artefactName(1)));
+        assertTrue(controller.handleCommand("simon: goto " + WorldGenerator.locationName(1)).contains(WorldGenerator.locationName(1)));
+        assertTrue(controller.handleCommand("simon: look").contains(WorldGenerator.furnitureName(1)));
+    }
+
+    // percentiles are exact below 128 and within 1/64 above
+    @Test
+    void testLatencyHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100; value++) histogram.record(value);
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        for (int i = 0; i < 999; i++) histogram.record(1_000_000);
+        histogram.record(5_000_000_000L);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p99 >= 1_000_000 && p99 <= 1_000_000 + 1_000_000 / 64, String.valueOf(p99));
+        assertEquals(5_000_000_000L, histogram.getValueAtPercentile(100));
+        assertEquals(1000, histogram.getCount());
+    }
+
+    // stages a rejected command never reached are not recorded, and nothing is recorded while disabled
+    @Test
+    void testCommandMetricsCountStagesAndResults() throws MyExceptions {
+        File entitiesFile = configFile("basic-entities.dot");
+        File actionsFile = configFile("basic-actions.xml");
+        Controller controller = new Controller(entitiesFile, actionsFile);
+        CommandMetrics metrics = controller.getMetrics();
+        metrics.setEnabled(false);
+        controller.handleCommand("simon: look");
+        assertEquals(0, metrics.getCommandCount());
+
+        metrics.setEnabled(true);
+        controller.handleCommand("simon: look");
+        controller.handleCommand("simon: dance");
+        controller.handleCommand("simon: goto cellar");
+        controller.handleCommand("sim0n: look");
+        assertEquals(4, metrics.getCommandCount());
+        assertEquals(1, metrics.getResultCount(CommandResult.Status.SUCCESS));
+        assertEquals(1, metrics.getResultCount(CommandResult.Status.UNKNOWN_COMMAND));
+        assertEquals(1, metrics.getResultCount(CommandResult.Status.NO_PATH));
+        assertEquals(1, metrics.getResultCount(CommandResult.Status.INVALID_PLAYER));
+        assertEquals(3, metrics.getStage(CommandMetrics.Stage.TOKENIZE).getCount());
+        assertEquals(2, metrics.getStage(CommandMetrics.Stage.APPLY).getCount());
+        assertTrue(metrics.report().contains("NO_PATH: 1"));
+    }
+
+    // events below the level are dropped, events over the rate are counted and reported with the next one
+    @Test
+    void testServerLogFiltersAndRateLimits() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ServerLog log = new ServerLog(new PrintStream(bytes, true), ServerLog.Level.INFO, 1, 3);
+        log.debug("Hidden", null);
+        for (int i = 0; i < 5; i++) log.info("Received message", "simon: look " + i);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bytes.toString().split("\n").length < 3 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        Thread.sleep(50);
+        String output = bytes.toString();
+        assertFalse(output.contains("Hidden"));
+        assertTrue(output.contains("level=INFO msg=\"Received message\" detail=\"simon: look 0\""));
+        assertTrue(output.contains("simon: look 2"));
+        assertFalse(output.contains("simon: look 3"));
+    }
+
+    // a restored server carries on with the same world, players and actions
+    @Test
+    void testSnapshotRestoresWorldAndPlayers(@TempDir File directory) throws Exception {
+        File entitiesFile = configFile("extended-entities.dot");
+        File actionsFile = configFile("extended-actions.xml");
+        GameServer server = new GameServer(entitiesFile, actionsFile);
+        server.handleCommand("simon: get axe");
+        server.handleCommand("simon: get potion");
+        server.handleCommand("simon: goto forest");
+        server.handleCommand("simon: cut tree");
+        server.handleCommand("sion: look");
+        File snapshot = new File(directory, "world.snapshot");
+        server.saveSnapshot(snapshot);
+
+        GameServer restored = GameServer.fromSnapshot(snapshot);
+        for (String command : List.of("simon: look", "simon: inv", "simon: health", "sion: look", "sion: inv")) {
+            assertEquals(server.handleCommand(command), restored.handleCommand(command), command);
+        }
+        assertEquals(server.handleCommand("simon: goto cabin"), restored.handleCommand("simon: goto cabin"));
+        assertEquals(server.handleCommand("simon: drink potion"), restored.handleCommand("simon: drink potion"));
+        assertEquals(server.handleCommand("sion: get potion"), restored.handleCommand("sion: get potion"));
+
+        Files.write(snapshot.toPath(), new byte[]{1, 2, 3});
+        assertThrows(MyExceptions.InvalidSnapshotException.class, () -> GameServer.fromSnapshot(snapshot));
+    }
+
+    // corrupt lengths and indices are reported as invalid snapshots rather than escaping as other exceptions
+    @Test
+    void testSnapshotRejectsCorruptLengthsAndIndices() {
+        WorldSnapshot.Encoder negativeLength = snapshotHeader();
+        negativeLength.putVarInt(1);
+        negativeLength.putVarInt(-1);
+        assertThrows(MyExceptions.InvalidSnapshotException.class, () -> WorldSnapshot.decode(negativeLength.contents()));
+
+        WorldSnapshot.Encoder badStoreroom = snapshotHeader();
+        badStoreroom.putVarInt(1);
+        badStoreroom.putString("cabin");
+        badStoreroom.putVarInt(1);
+        badStoreroom.putVarInt(0);
+        badStoreroom.putVarInt(0);
+        badStoreroom.putVarInt(5);
+        assertThrows(MyExceptions.InvalidSnapshotException.class, () -> WorldSnapshot.decode(badStoreroom.contents()));
+    }
+
+    private static WorldSnapshot.Encoder snapshotHeader() {
+        WorldSnapshot.Encoder out = new WorldSnapshot.Encoder();
+        out.putInt(WorldSnapshot.MAGIC);
+        out.putVarInt(WorldSnapshot.VERSION);
+        out.putVarLong(0);
+        return out;
+    }
+
+    // only commands which change the world are journaled, and a journal naming unknown entities is rejected
+    @Test
+    void testJournalSkipsReadOnlyCommands(@TempDir File directory) throws Exception {
+        File entitiesFile = configFile("basic-entities.dot");
+        File actionsFile = configFile("basic-actions.xml");
+        Controller controller = new Controller(entitiesFile, actionsFile);
+        try (CommandJournal journal = CommandJournal.open(new File(directory, "world.journal").toPath(), 100)) {
+            controller.setJournal(journal);
+            controller.handleCommand("simon: look");
+            assertEquals(1, controller.getAppliedSequence());
+            for (String command : List.of("simon: look", "simon: inv", "simon: health", "simon: look")) {
+                controller.handleCommand(command);
+            }
+            assertEquals(1, controller.getAppliedSequence());
+            controller.handleCommand("simon: get axe");
+            assertEquals(2, controller.getAppliedSequence());
+        }
+        assertThrows(MyExceptions.InvalidSnapshotException.class,
+                () -> controller.replayAction(3, "simon", 0, new int[]{Integer.MAX_VALUE}));
+    }
+
+    @Test
+    void testJournalReplaysCommandsAfterCrash(@TempDir File directory) throws Exception {
+        File entitiesFile = configFile("extended-entities.dot");
+        File actionsFile = configFile("extended-actions.xml");
+        File snapshot = new File(directory, "world.snapshot");
+        File journal = new File(directory, "world.journal");
+        GameServer server = GameServer.recover(entitiesFile, actionsFile, snapshot, journal);
+        server.handleCommand("simon: get axe");
+        server.handleCommand("simon: get potion");
+        server.handleCommand("simon: goto forest");
+        server.handleCommand("simon: cut tree");
+        server.handleCommand("simon: fly away");
+        server.handleCommand("sion: get coin");
+        server.commitJournal();
+        // the server crashes in the middle of writing a record after the last one
+        ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(journal.toPath()));
+        int end = CommandJournal.HEADER_SIZE;
+        while (contents.getInt(end) != 0) end += 8 + contents.getInt(end);
+        contents.putInt(end, 42).putInt(end + 4, 7);
+        Files.write(journal.toPath(), contents.array());
+
+        GameServer recovered = GameServer.recover(entitiesFile, actionsFile, snapshot, journal);
+        // recovering compacts the journal into the snapshot
+        assertEquals(0, ByteBuffer.wrap(Files.readAllBytes(journal.toPath())).getInt(CommandJournal.HEADER_SIZE));
+        for (String command : List.of("simon: look", "simon: inv", "sion: look", "sion: inv")) {
+            assertEquals(server.handleCommand(command), recovered.handleCommand(command), command);
+        }
+        assertEquals(server.handleCommand("simon: goto riverbank"), recovered.handleCommand("simon: goto riverbank"));
+        recovered.commitJournal();
+
+        // the compacted snapshot and the journal written since then recover the same world again
+        GameServer again = GameServer.recover(entitiesFile, actionsFile, snapshot, journal);
+        for (String command : List.of("simon: look", "simon: inv", "sion: inv")) {
+            assertEquals(server.handleCommand(command), again.handleCommand(command), command);
+        }
+    }
+
+    // the streaming loader reads the same actions as a DOM walk of the shipped files, and large generated files
+    @Test
+    void testStreamingActionsLoaderMatchesDom(@TempDir File directory) throws Exception {
+        for (String config : List.of("basic", "extended", "my", "zr")) {
+            File actionsFile = configFile(config + "-actions.xml");
+            org.w3c.dom.NodeList narrations = javax.xml.parsers.DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(actionsFile).getElementsByTagName("narration");
+            List<Action> actions = new GameActions(actionsFile, new SymbolTable()).listCustomizedActions();
+            assertEquals(narrations.getLength(), actions.size(), config);
+            for (int i = 0; i < actions.size(); i++) {
+                assertEquals(i, actions.get(i).getIdentifier());
+                assertEquals(narrations.item(i).getTextContent(), actions.get(i).getNarration(), config);
+            }
+        }
+        File[] generated = new WorldGenerator().seed(3).locations(50).actions(100_000).write(directory, "large");
+        assertEquals(100_000, new GameActions(generated[1], new SymbolTable()).listCustomizedActions().size());
+    }
+
+    // the streaming loader builds the same world as the Graphviz parser did from the shipped files
+    @Test
+    void testStreamingEntitiesLoaderMatchesGraphviz(@TempDir File directory) throws Exception {
+        for (String config : List.of("basic", "extended", "my", "zr")) {
+            File entitiesFile = configFile(config + "-entities.dot");
+            Parser parser = new Parser();
+            try (FileReader reader = new FileReader(entitiesFile)) {
+                parser.parse(reader);
+            }
+            List<Graph> sections = parser.getGraphs().get(0).getSubgraphs();
+            Document document = new Document(entitiesFile, new SymbolTable());
+            int index = 0;
+            for (Graph cluster : sections.get(0).getSubgraphs()) {
+                Node details = cluster.getNodes(false).get(0);
+                Location location = document.getLocation(index++);
+                assertEquals(details.getId().getId().toLowerCase(), location.getName(), config);
+                assertEquals(details.getAttributes().get("description"), location.getDescription(), config);
+                for (Graph items : cluster.getSubgraphs()) {
+                    for (Node node : items.getNodes(false)) {
+                        String name = node.getId().getId().toLowerCase();
+                        if (items.getId().getId().equals("players")) continue;
+                        assertTrue(location.hasItem(document.getSymbols().lookup(name)), name);
+                        assertEquals(node.getAttributes().get("description"), document.getEntity(document.getSymbols().lookup(name)).getDescription());
+                    }
+                }
+            }
+            for (Edge edge : sections.get(1).getEdges()) {
+                assertTrue(document.hasEdge(document.getLocation(edge.getSource().getNode().getId().getId()),
+                        document.getLocation(edge.getTarget().getNode().getId().getId())), config);
+            }
+        }
+
+        File broken = new File(directory, "broken.dot");
+        Files.writeString(broken.toPath(), "digraph layout { subgraph locations { subgraph cluster1 { cabin } } subgraph paths { cabin -> cellar } }");
+        assertThrows(MyExceptions.class, () -> new Document(broken, new SymbolTable()));
+        Files.writeString(broken.toPath(), "digraph layout { subgraph locations { subgraph cluster1 { cabin [description = \"x\"] ");
+        assertThrows(MyExceptions.class, () -> new Document(broken, new SymbolTable()));
+
+        File[] generated = new WorldGenerator().seed(5).locations(20_000).actions(10).write(directory, "large");
+        assertEquals(20_001, new Document(generated[0], new SymbolTable()).countLocations());
+    }
+
+    // actions are checked against the world once both files are loaded in parallel
+    @Test
+    void testLoadingRejectsActionsInconsistentWithWorld(@TempDir File directory) throws Exception {
+        File entitiesFile = configFile("basic-entities.dot");
+        File actionsFile = new File(directory, "actions.xml");
+        String action = "<actions><action><triggers><keyphrase>%s</keyphrase></triggers><subjects><entity>%s</entity></subjects>"
+                + "<consumed><entity>%s</entity></consumed><produced></produced><narration>done</narration></action></actions>";
+
+        Files.writeString(actionsFile.toPath(), String.format(action, "chop", "tree", "health"));
+        Controller controller = new Controller(entitiesFile, actionsFile);
+        controller.handleCommand("simon: goto forest");
+        assertEquals("done", controller.handleCommand("simon: chop tree"));
+        Files.writeString(actionsFile.toPath(), String.format(action, "chop", "dragon", "health"));
+        assertThrows(MyExceptions.InvalidActionException.class, () -> new Controller(entitiesFile, actionsFile));
+        Files.writeString(actionsFile.toPath(), String.format(action, "chop", "tree", "dragon"));
+        assertThrows(MyExceptions.InvalidActionException.class, () -> new Controller(entitiesFile, actionsFile));
+        Files.writeString(actionsFile.toPath(), String.format(action, "look", "tree", "log"));
+        assertThrows(MyExceptions.InvalidActionException.class, () -> new Controller(entitiesFile, actionsFile));
+        Files.writeString(actionsFile.toPath(), String.format(action, "axe", "tree", "log"));
+        assertThrows(MyExceptions.InvalidActionException.class, () -> new Controller(entitiesFile, actionsFile));
+        Files.writeString(actionsFile.toPath(), "<actions><action>");
+        assertThrows(MyExceptions.class, () -> new Controller(entitiesFile, actionsFile));
+        // an action without a narration or without triggers is an error, not an action to skip
+        Files.writeString(actionsFile.toPath(), String.format(action, "chop", "tree", "health").replace("<narration>done</narration>", ""));
+        assertThrows(MyExceptions.class, () -> new Controller(entitiesFile, actionsFile));
+        Files.writeString(actionsFile.toPath(), String.format(action, "chop", "tree", "health").replace("<keyphrase>chop</keyphrase>", ""));
+        assertThrows(MyExceptions.class, () -> new Controller(entitiesFile, actionsFile));
+    }
+
+    @Test
+    void testActionPlanChecksAndAppliesResolvedEntities() {
+        File entitiesFile = configFile("basic-entities.dot");
+        File actionsFile = configFile("basic-actions.xml");
+        Controller controller = new Controller(entitiesFile, actionsFile);
+        Document document = controller.getDocument();
+        SymbolTable symbols = document.getSymbols();
+        Action open = controller.getActions().listCustomizedActions().get(0);
+        ActionPlan plan = ActionPlan.compile(open, document, symbols.intern("health"));
+
+        controller.handleCommand("simon: look");
+        Player simon = document.getPlayers().get("simon");
+        assertEquals(CommandResult.SUBJECT_NOT_AVAILABLE, plan.check(simon));
+        controller.handleCommand("simon: goto forest");
+        controller.handleCommand("simon: get key");
+        controller.handleCommand("simon: goto cabin");
+        assertNull(plan.check(simon));
+
+        plan.apply(simon);
+        assertTrue(document.hasEdge(document.getLocation("cabin"), document.getLocation("cellar")));
+        assertFalse(simon.hasItem(symbols.lookup("key")));
+        assertTrue(document.getStoreroom().hasItem(symbols.lookup("key")));
+    }
+
+    @Test
+    void testReloadKeepsPlayersAndAddsContent(@TempDir File directory) throws Exception {
+        File entitiesFile = new File(directory, "entities.dot");
+        File actionsFile = new File(directory, "actions.xml");
+        Files.copy(configFile("basic-entities.dot").toPath(), entitiesFile.toPath());
+        Files.copy(configFile("basic-actions.xml").toPath(), actionsFile.toPath());
+        GameServer server = new GameServer(entitiesFile, actionsFile);
+        server.handleCommand("simon: get axe");
+        String inventory = server.handleCommand("simon: inv");
+
+        String actions = Files.readString(actionsFile.toPath());
+        Files.writeString(actionsFile.toPath(), actions.replace("</actions>", "<action><triggers><keyphrase>polish</keyphrase></triggers>"
+                + "<subjects><entity>axe</entity></subjects><consumed></consumed><produced></produced><narration>The axe shines</narration></action></actions>"));
+        assertTrue(server.reloadActions(actionsFile));
+        assertEquals("The axe shines", server.handleCommand("simon: polish axe"));
+        assertEquals(inventory, server.handleCommand("simon: inv"));
+
+        // invalid actions leave the previous ones in place
+        Files.writeString(actionsFile.toPath(), actions.replace("<keyphrase>open</keyphrase>", "<keyphrase>look</keyphrase>"));
+        assertFalse(server.reloadActions(actionsFile));
+        assertEquals("The axe shines", server.handleCommand("simon: polish axe"));
+
+        String entities = Files.readString(entitiesFile.toPath());
+        Files.writeString(entitiesFile.toPath(), entities
+                .replace("subgraph cluster999 {", "subgraph cluster004 { shed [description = \"A tool shed\"]; subgraph artefacts { saw [description = \"A saw\"] } }\n subgraph cluster999 {")
+                .replace("cellar -> cabin;", "cellar -> cabin; cabin -> shed;"));
+        Closeable watcher = server.watchConfig(entitiesFile, actionsFile);
+        try {
+            Files.writeString(actionsFile.toPath(), actions.replace("</actions>", "<action><triggers><keyphrase>sharpen</keyphrase></triggers>"
+                    + "<subjects><entity>saw</entity></subjects><consumed></consumed><produced></produced><narration>The saw is sharp</narration></action></actions>"));
+            Files.writeString(entitiesFile.toPath(), Files.readString(entitiesFile.toPath()));
+            long deadline = System.currentTimeMillis() + 10_000;
+            // the new action is known once both files are reloaded, the saw is still in the shed
+            String unknown = CommandResult.UNKNOWN_COMMAND.getNarration();
+            while (server.handleCommand("simon: sharpen saw").equals(unknown) && System.currentTimeMillis() < deadline) Thread.sleep(50);
+        } finally {
+            watcher.close();
+        }
+        assertTrue(server.handleCommand("simon: goto shed").contains("shed"));
+        assertTrue(server.handleCommand("simon: get saw").contains("saw"));
+        assertEquals("The saw is sharp", server.handleCommand("simon: sharpen saw"));
+        assertTrue(server.handleCommand("simon: inv").contains("axe"));
+    }
+
+    // actions which fail validation do not add their words to the symbols of the world
+    @Test
+    void testRejectedActionsLeaveSymbolsUntouched(@TempDir File directory) throws Exception {
+        Controller controller = new Controller(configFile("basic-entities.dot"), configFile("basic-actions.xml"));
+        SymbolTable symbols = controller.getDocument().getSymbols();
+        int size = symbols.size();
+        File actionsFile = new File(directory, "actions.xml");
+        Files.writeString(actionsFile.toPath(), "<actions><action><triggers><keyphrase>juggle</keyphrase></triggers>"
+                + "<subjects><entity>torch</entity></subjects><consumed></consumed><produced></produced><narration>Juggling</narration></action></actions>");
+        List<GameActions.Definition> definitions = GameActions.readDefinitions(actionsFile);
+        assertThrows(MyExceptions.InvalidActionException.class, () -> controller.prepareActions(definitions));
+        assertEquals(size, symbols.size());
+        assertEquals(SymbolTable.NO_SYMBOL, symbols.lookup("juggle"));
+    }
 }
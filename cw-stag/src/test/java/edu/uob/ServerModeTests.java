@@ -0,0 +1,216 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServerModeTests {
+
+    private static final char END_OF_TRANSMISSION = 4;
+
+    private GameServer server;
+
+    @BeforeEach
+    void setup() {
+        File entitiesFile = Paths.get("config" + File.separator + "basic-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "basic-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+    }
+
+    int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    interface Listener {
+        void listenOn(int port) throws IOException;
+    }
+
+    int startServer(Listener listener) throws IOException {
+        int port = freePort();
+        Thread thread = new Thread(() -> {
+            try {
+                listener.listenOn(port);
+            } catch (IOException ignored) {
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return port;
+    }
+
+    Socket connect(int port) {
+        return assertTimeoutPreemptively(Duration.ofMillis(5000), () -> {
+            while (true) {
+                try {
+                    return new Socket("localhost", port);
+                } catch (IOException e) {
+                    Thread.sleep(10);
+                }
+            }
+        });
+    }
+
+    String readReply(BufferedReader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        String line = reader.readLine();
+        while (line != null && !line.contains(String.valueOf(END_OF_TRANSMISSION))) {
+            sb.append(line).append("\n");
+            line = reader.readLine();
+        }
+        return sb.toString();
+    }
+
+    String sendOverSocket(int port, String command) {
+        return assertTimeoutPreemptively(Duration.ofMillis(5000), () -> {
+            try (Socket socket = this.connect(port);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+                writer.write(command + "\n");
+                writer.flush();
+                return this.readReply(reader);
+            }
+        });
+    }
+
+    // the world thread stops once the last listener returns, here because its port is taken
+    @Test
+    void testWorldThreadStopsWhenListenerReturns() throws IOException {
+        try (ServerSocket taken = new ServerSocket(0)) {
+            assertThrows(IOException.class, () -> server.concurrentListenOn(taken.getLocalPort()));
+        }
+        String reply = assertTimeoutPreemptively(Duration.ofMillis(5000), () -> server.getDispatcher().submit("simon: look").join());
+        assertTrue(reply.startsWith("[ERROR]"));
+    }
+
+    // a client which never sends its command must not block other players
+    @Test
+    void testConcurrentServerIsNotBlockedBySlowClient() throws IOException {
+        int port = this.startServer(server::concurrentListenOn);
+        try (Socket idle = this.connect(port)) {
+            assertTrue(idle.isConnected());
+            assertTrue(this.sendOverSocket(port, "simon: look").contains("cabin"));
+            this.sendOverSocket(port, "simon: get axe");
+            assertTrue(this.sendOverSocket(port, "simon: inv").contains("axe"));
+        }
+    }
+
+    void assertPipelinedCommands(int port) {
+        assertTimeoutPreemptively(Duration.ofMillis(5000), () -> {
+            try (Socket socket = this.connect(port);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+                writer.write("simon: get axe\nsimon: goto forest\nsimon: inv\nsimon: look\n");
+                writer.flush();
+                assertTrue(this.readReply(reader).contains("axe"));
+                assertTrue(this.readReply(reader).contains("forest"));
+                assertTrue(this.readReply(reader).contains("axe"));
+                assertTrue(this.readReply(reader).contains("key"));
+            }
+        });
+    }
+
+    // many pipelined commands on one connection, each reply framed by the end of transmission marker
+    @Test
+    void testSessionServerAnswersPipelinedCommands() throws IOException {
+        this.assertPipelinedCommands(this.startServer(server::sessionListenOn));
+    }
+
+    // idle sessions beyond the size of the connection pool do not keep a new session waiting
+    @Test
+    void testSessionServerServesMoreSessionsThanPoolSize() throws IOException {
+        int port = this.startServer(server::sessionListenOn);
+        List<Socket> idle = new ArrayList<>();
+        try {
+            for (int i = 0; i < 260; i++) idle.add(this.connect(port));
+            assertTrue(this.sendOverSocket(port, "simon: look").contains("cabin"));
+        } finally {
+            for (Socket socket : idle) socket.close();
+        }
+    }
+
+    @Test
+    void testNonBlockingServerAnswersPipelinedCommands() throws IOException {
+        int port = this.startServer(server::nonBlockingListenOn);
+        // a command split across two writes is only answered once complete
+        assertTimeoutPreemptively(Duration.ofMillis(5000), () -> {
+            try (Socket socket = this.connect(port);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+                writer.write("simon: lo");
+                writer.flush();
+                Thread.sleep(50);
+                writer.write("ok\r\n");
+                writer.flush();
+                assertTrue(this.readReply(reader).contains("cabin"));
+            }
+        });
+        this.assertPipelinedCommands(port);
+    }
+
+    // a client which closes its side after sending still gets the replies to its commands
+    @Test
+    void testNonBlockingServerAnswersHalfClosedConnection() throws IOException {
+        int port = this.startServer(server::nonBlockingListenOn);
+        assertTimeoutPreemptively(Duration.ofMillis(5000), () -> {
+            try (Socket socket = this.connect(port);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+                writer.write("simon: get axe\nsimon: inv\n");
+                writer.flush();
+                socket.shutdownOutput();
+                assertTrue(this.readReply(reader).contains("axe"));
+                assertTrue(this.readReply(reader).contains("axe"));
+                // the server closes the connection once everything is answered
+                assertNull(reader.readLine());
+            }
+        });
+    }
+
+    // more pipelined commands than the queue of the world thread holds are all answered
+    @Test
+    void testNonBlockingServerAnswersMoreCommandsThanItsQueueHolds() throws IOException {
+        int port = this.startServer(server::nonBlockingListenOn);
+        assertTimeoutPreemptively(Duration.ofMillis(20000), () -> {
+            List<Socket> sockets = new ArrayList<>();
+            try {
+                for (int i = 0; i < 8; i++) {
+                    Socket socket = this.connect(port);
+                    sockets.add(socket);
+                    String player = "player" + (char) ('a' + i);
+                    Thread thread = new Thread(() -> {
+                        try {
+                            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+                            for (int j = 0; j < 1000; j++) writer.write(player + ": look\n");
+                            writer.flush();
+                        } catch (IOException ignored) {
+                        }
+                    });
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+                for (Socket socket : sockets) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                    for (int j = 0; j < 1000; j++) assertTrue(this.readReply(reader).contains("cabin"));
+                }
+            } finally {
+                for (Socket socket : sockets) socket.close();
+            }
+        });
+    }
+}
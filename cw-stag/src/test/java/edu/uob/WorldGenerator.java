@@ -0,0 +1,340 @@
+package edu.uob;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic entities and actions files which Document and GameActions accept, for benchmarks and scale tests.
+ * <p>
+ * The same settings and seed always give the same world. Every location has a path to the next one, so the whole
+ * world is reachable from the start, and the density is the average number of paths out of a location.
+ * Names only use letters, since the command tokenizer drops digits.
+ * <p>
+ * From the command line every setting is a {@code key=value} argument, for example
+ * {@code ./mvnw test-compile exec:java@generator -Dexec.args="out=target/worlds name=large locations=100000 seed=7"}.
+ */
+public final class WorldGenerator {
+
+    private long seed = 42;
+    private int locations = 100;
+    private double density = 2.0;
+    private int artefactsPerRoom = 2;
+    private int furniturePerRoom = 1;
+    private int charactersPerRoom = 0;
+    private int actions = 50;
+    private int triggersPerAction = 2;
+    private int wordsPerTrigger = 2;
+    private int vocabulary = 200;
+    private double overlap = 0.1;
+
+    public static void main(String[] args) throws IOException {
+        WorldGenerator generator = new WorldGenerator();
+        File directory = new File(new StringBuilder().append("target").append(File.separator).append("worlds").toString());
+        String name = "generated";
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) throw new IllegalArgumentException(new StringBuilder().append("Expected key=value but got ").append(arg).toString());
+            String key = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            switch (key) {
+                case "out" -> directory = new File(value);
+                case "name" -> name = value;
+                case "seed" -> generator.seed(Long.parseLong(value));
+                case "locations" -> generator.locations(Integer.parseInt(value));
+                case "density" -> generator.density(Double.parseDouble(value));
+                case "artefacts" -> generator.artefactsPerRoom(Integer.parseInt(value));
+                case "furniture" -> generator.furniturePerRoom(Integer.parseInt(value));
+                case "characters" -> generator.charactersPerRoom(Integer.parseInt(value));
+                case "actions" -> generator.actions(Integer.parseInt(value));
+                case "triggers" -> generator.triggersPerAction(Integer.parseInt(value));
+                case "words" -> generator.wordsPerTrigger(Integer.parseInt(value));
+                case "vocabulary" -> generator.vocabulary(Integer.parseInt(value));
+                case "overlap" -> generator.overlap(Double.parseDouble(value));
+                default -> throw new IllegalArgumentException(new StringBuilder().append("Unknown setting ").append(key).toString());
+            }
+        }
+        File[] files = generator.write(directory, name);
+        System.out.println(new StringBuilder().append("Wrote ").append(files[0]).append(" and ").append(files[1]).toString());
+    }
+
+    public WorldGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public WorldGenerator locations(int locations) {
+        if (locations < 1) throw new IllegalArgumentException("A world needs at least one location");
+        this.locations = locations;
+        return this;
+    }
+
+    // average number of paths out of a location, at least the one to the next location
+    public WorldGenerator density(double density) {
+        this.density = density;
+        return this;
+    }
+
+    public WorldGenerator artefactsPerRoom(int artefactsPerRoom) {
+        this.artefactsPerRoom = artefactsPerRoom;
+        return this;
+    }
+
+    public WorldGenerator furniturePerRoom(int furniturePerRoom) {
+        this.furniturePerRoom = furniturePerRoom;
+        return this;
+    }
+
+    public WorldGenerator charactersPerRoom(int charactersPerRoom) {
+        this.charactersPerRoom = charactersPerRoom;
+        return this;
+    }
+
+    public WorldGenerator actions(int actions) {
+        this.actions = actions;
+        return this;
+    }
+
+    public WorldGenerator triggersPerAction(int triggersPerAction) {
+        if (triggersPerAction < 1) throw new IllegalArgumentException("An action needs at least one trigger");
+        this.triggersPerAction = triggersPerAction;
+        return this;
+    }
+
+    // maximum number of words of a trigger phrase
+    public WorldGenerator wordsPerTrigger(int wordsPerTrigger) {
+        if (wordsPerTrigger < 1) throw new IllegalArgumentException("A trigger needs at least one word");
+        this.wordsPerTrigger = wordsPerTrigger;
+        return this;
+    }
+
+    // number of distinct trigger words, a smaller vocabulary gives more phrases sharing words
+    public WorldGenerator vocabulary(int vocabulary) {
+        if (vocabulary < 1) throw new IllegalArgumentException("The vocabulary needs at least one word");
+        this.vocabulary = vocabulary;
+        return this;
+    }
+
+    // probability that a trigger phrase is one already used by an earlier action, which makes commands ambiguous
+    public WorldGenerator overlap(double overlap) {
+        this.overlap = overlap;
+        return this;
+    }
+
+    /**
+     * Writes name-entities.dot and name-actions.xml into the directory.
+     *
+     * @return The entities file and the actions file
+     */
+    public File[] write(File directory, String name) throws IOException {
+        Files.createDirectories(directory.toPath());
+        File entitiesFile = new File(directory, new StringBuilder().append(name).append("-entities.dot").toString());
+        File actionsFile = new File(directory, new StringBuilder().append(name).append("-actions.xml").toString());
+        try (BufferedWriter writer = Files.newBufferedWriter(entitiesFile.toPath(), StandardCharsets.UTF_8)) {
+            this.writeEntities(writer);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(actionsFile.toPath(), StandardCharsets.UTF_8)) {
+            this.writeActions(writer);
+        }
+        return new File[]{entitiesFile, actionsFile};
+    }
+
+    public static String locationName(int index) {
+        return WorldGenerator.name("loc", index);
+    }
+
+    public static String artefactName(int index) {
+        return WorldGenerator.name("art", index);
+    }
+
+    public static String furnitureName(int index) {
+        return WorldGenerator.name("fur", index);
+    }
+
+    public static String characterName(int index) {
+        return WorldGenerator.name("chr", index);
+    }
+
+    // artefacts in the storeroom, one for each action to produce
+    public static String producedName(int index) {
+        return WorldGenerator.name("pro", index);
+    }
+
+    // player names for the load generator, which follow the same rules
+    public static String playerName(int index) {
+        return WorldGenerator.name("ply", index);
+    }
+
+    public static String triggerWord(int index) {
+        return WorldGenerator.name("tw", index);
+    }
+
+    // prefix followed by the index in base 26 letters, so names of different kinds never collide
+    private static String name(String prefix, int index) {
+        StringBuilder sb = new StringBuilder(prefix);
+        int start = sb.length();
+        do {
+            sb.insert(start, (char) ('a' + index % 26));
+            index /= 26;
+        } while (index > 0);
+        return sb.toString();
+    }
+
+    private void writeEntities(BufferedWriter writer) throws IOException {
+        SplittableRandom random = new SplittableRandom(this.seed);
+        writer.write("digraph layout {\n");
+        writer.write("    subgraph locations {\n");
+        for (int location = 0; location < this.locations; location++) {
+            writer.write("        subgraph cluster");
+            writer.write(Integer.toString(location));
+            writer.write(" {\n");
+            this.writeNode(writer, "            ", locationName(location), "Location");
+            this.writeItems(writer, "artefacts", location, this.artefactsPerRoom, "Artefact");
+            this.writeItems(writer, "furniture", location, this.furniturePerRoom, "Furniture");
+            this.writeItems(writer, "characters", location, this.charactersPerRoom, "Character");
+            writer.write("        }\n");
+        }
+        writer.write("        subgraph cluster");
+        writer.write(Integer.toString(this.locations));
+        writer.write(" {\n");
+        this.writeNode(writer, "            ", "storeroom", "Storage for any entities not placed in the game");
+        writer.write("            subgraph artefacts {\n");
+        for (int action = 0; action < this.actions; action++) {
+            this.writeNode(writer, "                ", producedName(action), "Produced");
+        }
+        writer.write("            }\n");
+        writer.write("        }\n");
+        writer.write("    }\n");
+
+        writer.write("    subgraph paths {\n");
+        for (int location = 0; location < this.locations; location++) {
+            if (this.locations > 1) this.writePath(writer, location, (location + 1) % this.locations);
+        }
+        // the remaining paths go between random locations, duplicates are merged by the graph
+        long extra = Math.round(Math.max(0, this.density - 1) * this.locations);
+        for (long path = 0; path < extra && this.locations > 1; path++) {
+            int from = random.nextInt(this.locations);
+            int to = random.nextInt(this.locations - 1);
+            this.writePath(writer, from, to >= from ? to + 1 : to);
+        }
+        writer.write("    }\n");
+        writer.write("}\n");
+    }
+
+    private void writeItems(BufferedWriter writer, String kind, int location, int perRoom, String description) throws IOException {
+        if (perRoom <= 0) return;
+        writer.write("            subgraph ");
+        writer.write(kind);
+        writer.write(" {\n");
+        for (int i = 0; i < perRoom; i++) {
+            int index = location * perRoom + i;
+            String name = switch (kind) {
+                case "artefacts" -> artefactName(index);
+                case "furniture" -> furnitureName(index);
+                default -> characterName(index);
+            };
+            this.writeNode(writer, "                ", name, description);
+        }
+        writer.write("            }\n");
+    }
+
+    private void writeNode(BufferedWriter writer, String indent, String name, String description) throws IOException {
+        writer.write(indent);
+        writer.write(name);
+        writer.write(" [description = \"");
+        writer.write(description);
+        writer.write(" ");
+        writer.write(name);
+        writer.write("\"];\n");
+    }
+
+    private void writePath(BufferedWriter writer, int from, int to) throws IOException {
+        writer.write("        ");
+        writer.write(locationName(from));
+        writer.write(" -> ");
+        writer.write(locationName(to));
+        writer.write(";\n");
+    }
+
+    // every action needs furniture of one room and an artefact of another, and consumes the furniture
+    private void writeActions(BufferedWriter writer) throws IOException {
+        // a separate stream from the entities, so changing the actions keeps the same world
+        SplittableRandom random = new SplittableRandom(this.seed * 31 + 17);
+        List<String> phrases = new ArrayList<>();
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<actions>\n");
+        for (int action = 0; action < this.actions; action++) {
+            writer.write("    <action>\n");
+            writer.write("        <triggers>\n");
+            for (int trigger = 0; trigger < this.triggersPerAction; trigger++) {
+                String phrase;
+                if (!phrases.isEmpty() && random.nextDouble() < this.overlap) {
+                    phrase = phrases.get(random.nextInt(phrases.size()));
+                } else {
+                    phrase = this.newPhrase(random);
+                    phrases.add(phrase);
+                }
+                writer.write("            <keyphrase>");
+                writer.write(phrase);
+                writer.write("</keyphrase>\n");
+            }
+            writer.write("        </triggers>\n");
+
+            List<String> subjects = new ArrayList<>(2);
+            String consumed = null;
+            int room = random.nextInt(this.locations);
+            if (this.furniturePerRoom > 0) {
+                consumed = furnitureName(room * this.furniturePerRoom + random.nextInt(this.furniturePerRoom));
+                subjects.add(consumed);
+            }
+            if (this.artefactsPerRoom > 0) {
+                int owner = random.nextInt(this.locations);
+                subjects.add(artefactName(owner * this.artefactsPerRoom + random.nextInt(this.artefactsPerRoom)));
+            }
+            if (subjects.isEmpty()) subjects.add(locationName(room));
+            this.writeEntityList(writer, "subjects", subjects);
+            this.writeEntityList(writer, "consumed", consumed == null ? List.of() : List.of(consumed));
+
+            // produce the artefact of this action, a path, or health
+            String produced = switch (random.nextInt(3)) {
+                case 0 -> locationName(random.nextInt(this.locations));
+                case 1 -> "health";
+                default -> producedName(action);
+            };
+            this.writeEntityList(writer, "produced", List.of(produced));
+            writer.write("        <narration>Action ");
+            writer.write(Integer.toString(action));
+            writer.write(" happened</narration>\n");
+            writer.write("    </action>\n");
+        }
+        writer.write("</actions>\n");
+    }
+
+    private String newPhrase(SplittableRandom random) {
+        StringBuilder sb = new StringBuilder(triggerWord(random.nextInt(this.vocabulary)));
+        int words = 1 + random.nextInt(this.wordsPerTrigger);
+        for (int word = 1; word < words; word++) {
+            sb.append(" ").append(triggerWord(random.nextInt(this.vocabulary)));
+        }
+        return sb.toString();
+    }
+
+    private void writeEntityList(BufferedWriter writer, String tag, List<String> entities) throws IOException {
+        writer.write("        <");
+        writer.write(tag);
+        writer.write(">\n");
+        for (String entity : entities) {
+            writer.write("            <entity>");
+            writer.write(entity);
+            writer.write("</entity>\n");
+        }
+        writer.write("        </");
+        writer.write(tag);
+        writer.write(">\n");
+    }
+}